@@ -1,23 +1,30 @@
 package com.gym.auth.controller;
 
+import com.gym.auth.model.ImageVariant;
+import com.gym.auth.model.dto.MediaRecord;
+import com.gym.auth.service.ImageVariantService;
+import com.gym.auth.service.MediaMetadataCache;
+import com.gym.auth.service.MediaMetadataIndex;
+import com.gym.auth.service.MediaPathResolver;
+import com.gym.auth.service.MediaStreamingService;
+import com.gym.auth.service.MediaTieringService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.logging.Logger;
 
 @RestController
@@ -26,57 +33,74 @@ public class FileController {
     
     private static final Logger logger = Logger.getLogger(FileController.class.getName());
     
+    @Autowired
+    private MediaStreamingService mediaStreamingService;
+    
+    @Autowired
+    private ImageVariantService imageVariantService;
+    
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+    
+    @Autowired
+    private MediaMetadataIndex mediaMetadataIndex;
+    
+    @Autowired
+    private MediaTieringService mediaTieringService;
+    
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
     
     private static final String IMAGE_DIRECTORY = "images";
     private static final String VIDEO_DIRECTORY = "videos";
+    private static final int CHECK_SAMPLE_SIZE = 20;
     
     @GetMapping("/images/{filename:.+}")
-    public ResponseEntity<Resource> getImage(@PathVariable String filename) {
+    public void getImage(@PathVariable String filename,
+                         @RequestParam(value = "variant", required = false) String variant,
+                         @RequestParam(value = "w", required = false) Integer width,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        if (variant == null && width == null) {
+            serveFile(filename, IMAGE_DIRECTORY, request, response);
+            return;
+        }
+        
+        ImageVariant imageVariant;
         try {
-            Path filePath = Paths.get(uploadDir).resolve(IMAGE_DIRECTORY).resolve(filename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists()) {
-                String contentType = "image/jpeg";
-                if (filename.toLowerCase().endsWith(".png")) {
-                    contentType = "image/png";
-                } else if (filename.toLowerCase().endsWith(".gif")) {
-                    contentType = "image/gif";
-                }
-                
-                return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (Exception e) {
-            logger.severe("Error serving image: " + e.getMessage());
-            return ResponseEntity.internalServerError().build();
+            imageVariant = variant != null ? ImageVariant.fromKey(variant) : ImageVariant.forWidth(width);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
         }
+        
+        MediaRecord record = findRecord(filename, IMAGE_DIRECTORY);
+        if (record == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path original = mediaPathResolver.resolve(IMAGE_DIRECTORY, filename);
+        if (!Files.isRegularFile(original)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        
+        Path served;
+        try {
+            served = imageVariantService.resolve(original, record.getContentType(), imageVariant);
+        } catch (IOException e) {
+            // Images ImageIO can't decode are still served as uploaded
+            logger.warning("Could not render " + imageVariant.getKey() + " for " + filename + ": " + e.getMessage());
+            served = original;
+        }
+        stream(served, served.equals(original) ? record.getContentType()
+                : ImageVariantService.variantContentType(record.getContentType()), request, response);
     }
     
     @GetMapping("/videos/{filename:.+}")
-    public ResponseEntity<Resource> getVideo(@PathVariable String filename) {
-        try {
-            Path filePath = Paths.get(uploadDir).resolve(VIDEO_DIRECTORY).resolve(filename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists()) {
-                return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .contentType(MediaType.parseMediaType("video/mp4"))
-                    .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (Exception e) {
-            logger.severe("Error serving video: " + e.getMessage());
-            return ResponseEntity.internalServerError().build();
-        }
+    public void getVideo(@PathVariable String filename, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        serveFile(filename, VIDEO_DIRECTORY, request, response);
     }
     
     @GetMapping("/check")
@@ -94,14 +118,19 @@ public class FileController {
             response.append("Images directory exists: ").append(imagesDir.exists()).append("\n");
             response.append("Images directory can read: ").append(imagesDir.canRead()).append("\n");
             
+            response.append("Storage layout: ").append(mediaPathResolver.isSharded() ? "sharded" : "flat").append("\n");
+            
+            // Sample only the first few entries; listing a directory of millions of files is the problem sharding solves
             if (imagesDir.exists() && imagesDir.isDirectory()) {
-                File[] files = imagesDir.listFiles();
-                response.append("Files in images directory: ").append(files != null ? files.length : 0).append("\n");
-                
-                if (files != null) {
-                    for (File file : files) {
-                        response.append("File: ").append(file.getName())
-                                .append(", Readable: ").append(file.canRead())
+                int shown = 0;
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(imagesDir.toPath())) {
+                    for (Path entry : entries) {
+                        if (shown++ == CHECK_SAMPLE_SIZE) {
+                            response.append("...").append("\n");
+                            break;
+                        }
+                        response.append(Files.isDirectory(entry) ? "Dir: " : "File: ").append(entry.getFileName())
+                                .append(", Readable: ").append(Files.isReadable(entry))
                                 .append("\n");
                     }
                 }
@@ -113,65 +142,61 @@ public class FileController {
         return ResponseEntity.ok(response.toString());
     }
     
-    private ResponseEntity<Resource> getFileResource(String fileName, String subDirectory) {
+    /**
+     * Serve an original upload using the metadata recorded for it. Unknown names are a 404 and
+     * headers, 304s and HEAD are answered without looking at the disk.
+     */
+    private void serveFile(String fileName, String subDirectory, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        MediaRecord record = findRecord(fileName, subDirectory);
+        if (record == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        mediaTieringService.recordAccess(subDirectory, fileName);
+        if (!record.isComplete()) {
+            // Uploaded before sizes and checksums were recorded
+            stream(mediaTieringService.localPath(subDirectory, fileName), record.getContentType(), request, response);
+            return;
+        }
+        
+        // A file moved to cold storage is only fetched back once its bytes are actually needed
+        MediaMetadataCache.FileMetadata metadata = new MediaMetadataCache.FileMetadata(
+                () -> {
+                    try {
+                        return mediaTieringService.localPath(subDirectory, fileName);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                record.getSizeBytes(),
+                record.getCreatedAt().getTime(),
+                "\"" + record.getContentHash() + "\"");
         try {
-            // Get the absolute path to the file
-            Path filePath = Paths.get(uploadDir).resolve(subDirectory).resolve(fileName).normalize().toAbsolutePath();
-            logger.info("Looking for file at: " + filePath.toString());
-            
-            // Check if the file exists on disk
-            boolean fileExists = Files.exists(filePath);
-            logger.info("File exists: " + fileExists);
-            
-            // Get directory contents for debugging
-            try {
-                Files.list(Paths.get(uploadDir).resolve(subDirectory))
-                    .forEach(p -> logger.info("Available file: " + p.getFileName()));
-            } catch (IOException e) {
-                logger.warning("Could not list directory contents: " + e.getMessage());
-            }
-            
-            Resource resource = new UrlResource(filePath.toUri());
-            
-            if (resource.exists()) {
-                String contentType = determineContentType(fileName, subDirectory);
-                
-                logger.info("Successfully serving file: " + fileName + " with content type: " + contentType);
-                
-                return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
-            } else {
-                logger.warning("File not found: " + fileName);
-                return ResponseEntity.notFound().build();
-            }
-        } catch (MalformedURLException ex) {
-            logger.severe("Error creating URL for file: " + fileName + ", error: " + ex.getMessage());
-            return ResponseEntity.badRequest().build();
+            mediaStreamingService.serve(request, response, metadata, fileName, record.getContentType());
+        } catch (IOException e) {
+            // Usually the client went away mid-stream (seek, tab closed)
+            logger.fine("Stopped streaming " + fileName + ": " + e.getMessage());
         }
     }
     
     /**
-     * Determine content type based on file extension
+     * Recorded metadata of a stored file, or null if the name is invalid or no post refers to it
      */
-    private String determineContentType(String fileName, String subDirectory) {
-        String contentType;
-        
-        if (subDirectory.equals("images")) {
-            if (fileName.toLowerCase().endsWith(".png")) {
-                contentType = "image/png";
-            } else if (fileName.toLowerCase().endsWith(".gif")) {
-                contentType = "image/gif";
-            } else if (fileName.toLowerCase().endsWith(".jpg") || fileName.toLowerCase().endsWith(".jpeg")) {
-                contentType = "image/jpeg";
-            } else {
-                contentType = "application/octet-stream";
-            }
-        } else {
-            contentType = "video/mp4";
+    private MediaRecord findRecord(String fileName, String subDirectory) {
+        if (!MediaPathResolver.isValidName(fileName)) {
+            return null;
+        }
+        return mediaMetadataIndex.get(subDirectory, fileName);
+    }
+    
+    private void stream(Path filePath, String contentType, HttpServletRequest request,
+                        HttpServletResponse response) throws IOException {
+        try {
+            mediaStreamingService.serve(request, response, filePath, contentType);
+        } catch (IOException e) {
+            // Usually the client went away mid-stream (seek, tab closed)
+            logger.fine("Stopped streaming " + filePath.getFileName() + ": " + e.getMessage());
         }
-        
-        return contentType;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package com.gym.auth.controller;
+
+import com.gym.auth.service.HotMediaCache;
+import com.gym.auth.service.MediaTieringService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Operational counters for media serving and storage. Kept out of /api/files, which is
+ * public, because they expose cache keys and storage configuration.
+ */
+@RestController
+@RequestMapping("/api/admin/media")
+public class MediaAdminController {
+    
+    @Autowired
+    private HotMediaCache hotMediaCache;
+    
+    @Autowired
+    private MediaTieringService mediaTieringService;
+    
+    /**
+     * Hit ratio, evictions and occupancy of the in-memory media cache, for sizing it
+     */
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(hotMediaCache.stats());
+    }
+    
+    /**
+     * Files moved between the local and cold storage tiers, and restores on request
+     */
+    @GetMapping("/storage/stats")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Map<String, Object>> getStorageStats() {
+        return ResponseEntity.ok(mediaTieringService.stats());
+    }
+}
@@ -1,59 +1,96 @@
 package com.gym.auth.controller;
 
-import com.gym.auth.model.Comment;
 import com.gym.auth.model.Post;
 import com.gym.auth.model.User;
+import com.gym.auth.model.dto.CommentResponse;
+import com.gym.auth.model.dto.CursorPage;
 import com.gym.auth.model.dto.PostRequest;
 import com.gym.auth.model.dto.PostResponse;
-import com.gym.auth.model.dto.UserSummary;
-import com.gym.auth.repository.UserRepository;
-import com.gym.auth.security.UserDetailsImpl;
+import com.gym.auth.security.CurrentUserHolder;
+import com.gym.auth.security.UserPrincipalCache;
+import com.gym.auth.service.LikeWriteBuffer;
+import com.gym.auth.service.MultipartStreamReader;
 import com.gym.auth.service.PostService;
+import com.gym.auth.service.StreamingPostUploadService;
+import com.gym.auth.service.UploadAdmission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 
-import java.util.Date;
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/posts")
 public class PostController {
 
+    private static final Logger logger = LoggerFactory.getLogger(PostController.class);
+
     @Autowired
     private PostService postService;
     
     @Autowired
-    private UserRepository userRepository;
+    private UserPrincipalCache userPrincipalCache;
+    
+    @Autowired
+    private CurrentUserHolder currentUserHolder;
+    
+    @Autowired
+    private StreamingPostUploadService streamingPostUploadService;
+    
+    @Autowired
+    private UploadAdmission uploadAdmission;
+    
+    @Value("${app.uploads.stream.enabled:true}")
+    private boolean streamingUploads;
     
     @GetMapping
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<List<PostResponse>> getAllPosts() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User currentUser = userRepository.findById(userDetails.getId()).orElseThrow();
+        User currentUser = currentUserHolder.getUser();
         
         List<Post> posts = postService.getAllPosts();
         
-        List<PostResponse> postResponses = posts.stream()
-            .map(post -> PostResponse.fromPost(post, postService.isPostLikedByUser(post.getId(), currentUser)))
-            .collect(Collectors.toList());
+        List<PostResponse> postResponses = toResponses(posts, currentUser);
         
         return ResponseEntity.ok(postResponses);
     }
     
+    @GetMapping("/feed")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> getFeed(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        User currentUser = currentUserHolder.getUser();
+        
+        try {
+            CursorPage<PostResponse> page = postService.getFeed(cursor, size, currentUser);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<PostResponse> getPostById(@PathVariable Long id) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User currentUser = userRepository.findById(userDetails.getId()).orElseThrow();
+        User currentUser = currentUserHolder.getUser();
         
         Post post = postService.getPostById(id);
         boolean likedByUser = postService.isPostLikedByUser(id, currentUser);
@@ -64,32 +101,73 @@ public class PostController {
     @GetMapping("/user/{userId}")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<List<PostResponse>> getPostsByUser(@PathVariable Long userId) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User currentUser = userRepository.findById(userDetails.getId()).orElseThrow();
+        User currentUser = currentUserHolder.getUser();
         
-        User user = userRepository.findById(userId).orElseThrow();
+        User user = userPrincipalCache.findUserById(userId).orElseThrow();
         List<Post> posts = postService.getPostsByUser(user);
         
-        List<PostResponse> postResponses = posts.stream()
-            .map(post -> PostResponse.fromPost(post, postService.isPostLikedByUser(post.getId(), currentUser)))
-            .collect(Collectors.toList());
+        List<PostResponse> postResponses = toResponses(posts, currentUser);
         
         return ResponseEntity.ok(postResponses);
     }
     
-    @PostMapping
+    @GetMapping("/user/{userId}/feed")
     @PreAuthorize("hasRole('USER')")
-    public ResponseEntity<PostResponse> createPost(
-            @RequestParam(value = "text", required = false) String text,
-            @RequestParam(value = "images", required = false) List<MultipartFile> images,
-            @RequestParam(value = "video", required = false) MultipartFile video) {
+    public ResponseEntity<?> getUserFeed(
+            @PathVariable Long userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        User currentUser = currentUserHolder.getUser();
         
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        try {
+            CursorPage<PostResponse> page = postService.getUserFeed(userId, cursor, size, currentUser);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    private List<PostResponse> toResponses(List<Post> posts, User currentUser) {
+        List<Long> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
+        Set<Long> likedPostIds = postService.getLikedPostIds(postIds, currentUser);
         
-        Post post = postService.createPost(text, user, images, video);
+        return posts.stream()
+            .map(post -> PostResponse.fromPost(post, likedPostIds))
+            .collect(Collectors.toList());
+    }
+    
+    @PostMapping
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> createPost(HttpServletRequest request) {
+        User user = currentUserHolder.getUser();
+        
+        Post post;
+        boolean multipartBody = MultipartStreamReader.boundaryOf(request.getContentType()) != null;
+        // One admission decision per upload, made before any of the body is read
+        try (UploadAdmission.Permit permit = multipartBody ? uploadAdmission.admit() : null) {
+            if (streamingUploads && multipartBody) {
+                // Parse the body ourselves so media goes straight to storage without a container temp file
+                post = streamingPostUploadService.createPost(request, user);
+            } else if (request instanceof MultipartHttpServletRequest) {
+                // Parts are resolved lazily, so the container only reads the body here
+                MultipartHttpServletRequest multipart = (MultipartHttpServletRequest) request;
+                post = postService.createPost(multipart.getParameter("text"), user, multipart.getFiles("images"),
+                                              multipart.getFile("video"), multipart.getParameter("videoUploadId"));
+            } else {
+                post = postService.createPost(request.getParameter("text"), user, Collections.<MultipartFile>emptyList(),
+                                              null, request.getParameter("videoUploadId"));
+            }
+        } catch (UploadAdmission.UploadRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        } catch (MultipartStreamReader.LimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body("Could not read upload: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         
         return ResponseEntity.status(HttpStatus.CREATED).body(new PostResponse(post));
     }
@@ -100,9 +178,7 @@ public class PostController {
             @PathVariable Long id,
             @RequestBody PostRequest postRequest) {
         
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
         Post post = postService.updatePost(id, postRequest.getText(), user);
         
@@ -112,9 +188,7 @@ public class PostController {
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> deletePost(@PathVariable Long id) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
         postService.deletePost(id, user);
         
@@ -124,11 +198,18 @@ public class PostController {
     @PostMapping("/{id}/like")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> likePost(@PathVariable Long id) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
-        postService.likePost(id, user);
+        try {
+            postService.likePost(id, user);
+        } catch (DataIntegrityViolationException e) {
+            // The unique (post, user) key caught a like that was already there
+            logger.debug("Duplicate like ignored for post {}", id);
+        } catch (PessimisticLockingFailureException e) {
+            return likeBusy(id, e);
+        } catch (LikeWriteBuffer.BufferFullException e) {
+            return likeBusy(id, e);
+        }
         
         return ResponseEntity.ok().build();
     }
@@ -136,22 +217,49 @@ public class PostController {
     @PostMapping("/{id}/unlike")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> unlikePost(@PathVariable Long id) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
-        postService.unlikePost(id, user);
+        try {
+            postService.unlikePost(id, user);
+        } catch (PessimisticLockingFailureException e) {
+            return likeBusy(id, e);
+        } catch (LikeWriteBuffer.BufferFullException e) {
+            return likeBusy(id, e);
+        }
         
         return ResponseEntity.ok().build();
     }
     
+    // Lock timeouts and deadlocks that outlasted the service's retries, or a full like buffer
+    private ResponseEntity<?> likeBusy(Long id, RuntimeException e) {
+        logger.warn("Gave up on like change for post {}: {}", id, e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Post is busy, try again");
+    }
+    
     // Comment endpoints
     @GetMapping("/{postId}/comments")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> getComments(@PathVariable Long postId) {
         System.out.println("GET request for comments of post: " + postId);
-        Post post = postService.getPostById(postId);
-        return ResponseEntity.ok(post.getComments());
+        return ResponseEntity.ok(postService.getComments(postId));
+    }
+    
+    @GetMapping("/{postId}/comments/page")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> getCommentPage(
+            @PathVariable Long postId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size) {
+        try {
+            CursorPage<CommentResponse> page = postService.getCommentPage(postId, cursor, size);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
     }
     
     @PostMapping("/{postId}/comments")
@@ -162,13 +270,11 @@ public class PostController {
         
         System.out.println("POST request to add comment to post: " + postId);
         
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
-        Comment comment = postService.addComment(postId, user, commentRequest.getText());
+        CommentResponse comment = postService.addComment(postId, user, commentRequest.getText());
         
-        return ResponseEntity.status(HttpStatus.CREATED).body(new CommentResponse(comment));
+        return ResponseEntity.status(HttpStatus.CREATED).body(comment);
     }
     
     @PutMapping("/{postId}/comments/{commentId}")
@@ -181,13 +287,15 @@ public class PostController {
         System.out.println("PUT request to update comment: " + commentId + " for post: " + postId);
         System.out.println("Request body: " + commentRequest.getText());
         
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
         try {
-            Comment comment = postService.updateComment(postId, commentId, user, commentRequest.getText());
-            return ResponseEntity.ok(new CommentResponse(comment));
+            CommentResponse comment = postService.updateComment(
+                postId, commentId, user, commentRequest.getText(), commentRequest.getVersion());
+            return ResponseEntity.ok(comment);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Comment was modified concurrently, reload and retry");
         } catch (Exception e) {
             System.err.println("Error updating comment: " + e.getMessage());
             e.printStackTrace();
@@ -200,17 +308,19 @@ public class PostController {
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<?> deleteComment(
             @PathVariable Long postId,
-            @PathVariable Long commentId) {
+            @PathVariable Long commentId,
+            @RequestParam(value = "version", required = false) Long version) {
         
         System.out.println("DELETE request for comment: " + commentId + " of post: " + postId);
         
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        User user = userRepository.findById(userDetails.getId()).orElseThrow();
+        User user = currentUserHolder.getUser();
         
         try {
-            postService.deleteComment(postId, commentId, user);
+            postService.deleteComment(postId, commentId, user, version);
             return ResponseEntity.ok().build();
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Comment was modified concurrently, reload and retry");
         } catch (Exception e) {
             System.err.println("Error deleting comment: " + e.getMessage());
             e.printStackTrace();
@@ -219,9 +329,11 @@ public class PostController {
         }
     }
     
-    // Request and response classes for comments
+    // Request class for comments
     static class CommentRequest {
         private String text;
+        // Version the client last saw; optional, used to detect concurrent edits
+        private Long version;
         
         public String getText() {
             return text;
@@ -230,42 +342,13 @@ public class PostController {
         public void setText(String text) {
             this.text = text;
         }
-    }
-    
-    static class CommentResponse {
-        private Long id;
-        private String text;
-        private UserSummary user;
-        private Date createdAt;
-        private Date updatedAt;
-        
-        public CommentResponse(Comment comment) {
-            this.id = comment.getId();
-            this.text = comment.getText();
-            this.user = new UserSummary(comment.getUser());
-            this.createdAt = comment.getCreatedAt();
-            this.updatedAt = comment.getUpdatedAt();
-        }
-        
-        // Getters
-        public Long getId() {
-            return id;
-        }
-        
-        public String getText() {
-            return text;
-        }
-        
-        public UserSummary getUser() {
-            return user;
-        }
         
-        public Date getCreatedAt() {
-            return createdAt;
+        public Long getVersion() {
+            return version;
         }
         
-        public Date getUpdatedAt() {
-            return updatedAt;
+        public void setVersion(Long version) {
+            this.version = version;
         }
     }
 } 
\ No newline at end of file
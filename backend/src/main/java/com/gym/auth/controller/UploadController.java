@@ -0,0 +1,177 @@
+package com.gym.auth.controller;
+
+import com.gym.auth.model.UploadSession;
+import com.gym.auth.model.User;
+import com.gym.auth.model.dto.UploadSessionResponse;
+import com.gym.auth.security.CurrentUserHolder;
+import com.gym.auth.service.ResumableUploadService;
+import com.gym.auth.service.UploadAdmission;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resumable video uploads. A client calls POST to start, PUTs chunks with their byte offset,
+ * asks GET for the current offset after a dropped connection, and finalizes once every byte
+ * is in. The returned uploadId is then sent as videoUploadId when creating the post.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadController {
+    
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+    
+    @Autowired
+    private CurrentUserHolder currentUserHolder;
+    
+    @Autowired
+    private UploadAdmission uploadAdmission;
+    
+    /**
+     * Upload admission: writes in flight, queue depth and time spent waiting for a slot
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(uploadAdmission.stats());
+    }
+    
+    @PostMapping
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> initUpload(@RequestBody UploadInitRequest initRequest) throws IOException {
+        User user = currentUserHolder.getUser();
+        
+        try {
+            UploadSession session = resumableUploadService.init(user, initRequest.getFileName(),
+                    initRequest.getContentType(), initRequest.getSize());
+            return ResponseEntity.status(HttpStatus.CREATED).body(new UploadSessionResponse(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> getUpload(@PathVariable String id) {
+        User user = currentUserHolder.getUser();
+        
+        try {
+            return ResponseEntity.ok(new UploadSessionResponse(resumableUploadService.getSession(id, user)));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    /**
+     * Write the raw request body at the given offset. The offset may repeat bytes already
+     * received, but may not leave a gap: a gap gets 409 with the current offset, a negative or
+     * unparseable offset 400, and a chunk past the declared size or chunk limit 413.
+     */
+    @PutMapping("/{id}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> putChunk(@PathVariable String id,
+                                      @RequestParam("offset") long offset,
+                                      HttpServletRequest request) throws IOException {
+        User user = currentUserHolder.getUser();
+        
+        try {
+            long received = resumableUploadService.writeChunk(id, user, offset, request.getInputStream());
+            return ResponseEntity.ok(offsetBody(id, received));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (UploadAdmission.UploadRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        } catch (ResumableUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(offsetBody(id, e.getCurrentOffset()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (ResumableUploadService.ChunkTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    @PostMapping("/{id}/finalize")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> finalizeUpload(@PathVariable String id,
+                                            @RequestParam(value = "sha256", required = false) String sha256) {
+        User user = currentUserHolder.getUser();
+        
+        try {
+            return ResponseEntity.ok(new UploadSessionResponse(resumableUploadService.finalizeUpload(id, user, sha256)));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (ResumableUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(offsetBody(id, e.getCurrentOffset()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> cancelUpload(@PathVariable String id) throws IOException {
+        User user = currentUserHolder.getUser();
+        
+        try {
+            resumableUploadService.abort(id, user);
+            return ResponseEntity.noContent().build();
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+    
+    private static Map<String, Object> offsetBody(String id, long offset) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("uploadId", id);
+        body.put("offset", offset);
+        return body;
+    }
+    
+    static class UploadInitRequest {
+        private String fileName;
+        private String contentType;
+        private long size;
+        
+        public String getFileName() {
+            return fileName;
+        }
+        
+        public void setFileName(String fileName) {
+            this.fileName = fileName;
+        }
+        
+        public String getContentType() {
+            return contentType;
+        }
+        
+        public void setContentType(String contentType) {
+            this.contentType = contentType;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public void setSize(long size) {
+            this.size = size;
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.gym.auth.controller;
 import com.gym.auth.model.Exercise;
 import com.gym.auth.model.User;
 import com.gym.auth.model.WorkoutSchedule;
-import com.gym.auth.repository.UserRepository;
 import com.gym.auth.security.UserDetailsImpl;
+import com.gym.auth.security.UserPrincipalCache;
 import com.gym.auth.service.WorkoutScheduleService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -27,12 +27,12 @@ public class WorkoutScheduleController {
     private WorkoutScheduleService workoutScheduleService;
     
     @Autowired
-    private UserRepository userRepository;
+    private UserPrincipalCache userPrincipalCache;
     
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        return userRepository.findById(userDetails.getId())
+        return userPrincipalCache.findUserById(userDetails.getId())
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
     
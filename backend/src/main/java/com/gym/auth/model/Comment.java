@@ -4,7 +4,9 @@ import javax.persistence.*;
 import java.util.Date;
 
 @Entity
-@Table(name = "comments")
+@Table(name = "comments", indexes = {
+    @Index(name = "idx_comments_post_created_at_id", columnList = "post_id, created_at, id")
+})
 public class Comment {
     
     @Id
@@ -22,6 +24,10 @@ public class Comment {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String text;
     
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+    
     @Column(name = "created_at")
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdAt;
@@ -71,6 +77,14 @@ public class Comment {
         this.text = text;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
     public Date getCreatedAt() {
         return createdAt;
     }
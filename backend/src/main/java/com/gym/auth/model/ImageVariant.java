@@ -0,0 +1,47 @@
+package com.gym.auth.model;
+
+/**
+ * Resized renditions served for post images, bounded by their longest edge
+ */
+public enum ImageVariant {
+    THUMB("thumb", 160),
+    FEED("feed", 720),
+    FULL("full", 1440);
+    
+    private final String key;
+    private final int maxEdge;
+    
+    ImageVariant(String key, int maxEdge) {
+        this.key = key;
+        this.maxEdge = maxEdge;
+    }
+    
+    public String getKey() {
+        return key;
+    }
+    
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+    
+    public static ImageVariant fromKey(String key) {
+        for (ImageVariant variant : values()) {
+            if (variant.key.equalsIgnoreCase(key)) {
+                return variant;
+            }
+        }
+        throw new IllegalArgumentException("Unknown image variant: " + key);
+    }
+    
+    /**
+     * Smallest variant at least the requested width, or FULL if none is
+     */
+    public static ImageVariant forWidth(int width) {
+        for (ImageVariant variant : values()) {
+            if (variant.maxEdge >= width) {
+                return variant;
+            }
+        }
+        return FULL;
+    }
+}
@@ -0,0 +1,74 @@
+package com.gym.auth.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * A content-addressed media file shared by every post that uploaded the same bytes.
+ * The file is removed only when refCount drops to zero.
+ */
+@Entity
+@Table(name = "media_blobs")
+public class MediaBlob {
+    
+    // Path relative to the upload directory, e.g. images/<sha256>.jpg
+    @Id
+    @Column(length = 255)
+    private String path;
+    
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+    
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+    
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    public MediaBlob() {
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+    
+    public long getRefCount() {
+        return refCount;
+    }
+    
+    public void setRefCount(long refCount) {
+        this.refCount = refCount;
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
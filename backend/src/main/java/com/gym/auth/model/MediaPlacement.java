@@ -0,0 +1,112 @@
+package com.gym.auth.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Which storage tier a media file lives in, and how recently it was watched. Files without
+ * a row are hot: they have only ever been on local disk.
+ */
+@Entity
+@Table(name = "media_placements", indexes = {
+    @Index(name = "idx_media_placements_tier_accessed", columnList = "tier, last_accessed_at")
+})
+public class MediaPlacement {
+    
+    public enum Tier {
+        HOT,
+        COLD
+    }
+    
+    // Path relative to the upload directory, e.g. videos/<name>.mp4
+    @Id
+    @Column(length = 255)
+    private String path;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Tier tier = Tier.HOT;
+    
+    // Name of the BlobStore holding the cold copy
+    @Column(name = "cold_store", length = 32)
+    private String coldStore;
+    
+    // A cold file may still have a local copy, restored on access or not yet dropped
+    @Column(name = "local_copy", nullable = false)
+    private boolean localCopy = true;
+    
+    // Requests since the last tiering run, halved each run
+    @Column(name = "recent_hits", nullable = false)
+    private int recentHits;
+    
+    @Column(name = "last_accessed_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastAccessedAt;
+    
+    @Column(name = "moved_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date movedAt;
+    
+    public MediaPlacement() {
+    }
+    
+    public MediaPlacement(String path) {
+        this.path = path;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public Tier getTier() {
+        return tier;
+    }
+    
+    public void setTier(Tier tier) {
+        this.tier = tier;
+    }
+    
+    public String getColdStore() {
+        return coldStore;
+    }
+    
+    public void setColdStore(String coldStore) {
+        this.coldStore = coldStore;
+    }
+    
+    public boolean isLocalCopy() {
+        return localCopy;
+    }
+    
+    public void setLocalCopy(boolean localCopy) {
+        this.localCopy = localCopy;
+    }
+    
+    public int getRecentHits() {
+        return recentHits;
+    }
+    
+    public void setRecentHits(int recentHits) {
+        this.recentHits = recentHits;
+    }
+    
+    public Date getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+    
+    public void setLastAccessedAt(Date lastAccessedAt) {
+        this.lastAccessedAt = lastAccessedAt;
+    }
+    
+    public Date getMovedAt() {
+        return movedAt;
+    }
+    
+    public void setMovedAt(Date movedAt) {
+        this.movedAt = movedAt;
+    }
+}
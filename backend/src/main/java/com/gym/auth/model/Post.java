@@ -6,7 +6,10 @@ import java.util.Date;
 import java.util.List;
 
 @Entity
-@Table(name = "posts")
+@Table(name = "posts", indexes = {
+    @Index(name = "idx_posts_created_at_id", columnList = "created_at, id"),
+    @Index(name = "idx_posts_user_created_at_id", columnList = "user_id, created_at, id")
+})
 public class Post {
     
     @Id
@@ -32,6 +35,13 @@ public class Post {
     @OneToMany(mappedBy = "post", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Comment> comments = new ArrayList<>();
     
+    // Maintained by SQL increments in PostRepository, never written from the entity
+    @Column(name = "likes_count", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private long likesCount;
+    
+    @Column(name = "comments_count", nullable = false, updatable = false, columnDefinition = "bigint default 0")
+    private long commentsCount;
+    
     @Column(name = "created_at")
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdAt;
@@ -117,6 +127,22 @@ public class Post {
         this.comments = comments;
     }
     
+    public long getLikesCount() {
+        return likesCount;
+    }
+    
+    public void setLikesCount(long likesCount) {
+        this.likesCount = likesCount;
+    }
+    
+    public long getCommentsCount() {
+        return commentsCount;
+    }
+    
+    public void setCommentsCount(long commentsCount) {
+        this.commentsCount = commentsCount;
+    }
+    
     public Date getCreatedAt() {
         return createdAt;
     }
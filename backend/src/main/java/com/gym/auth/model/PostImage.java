@@ -4,7 +4,7 @@ import javax.persistence.*;
 import java.util.Date;
 
 @Entity
-@Table(name = "post_images")
+@Table(name = "post_images", indexes = @Index(name = "idx_post_images_file_name", columnList = "fileName"))
 public class PostImage {
     
     @Id
@@ -24,6 +24,20 @@ public class PostImage {
     @Column(nullable = false)
     private String url;
     
+    // SHA-256 of the stored bytes; identical uploads share one content-addressed file
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    // Recorded at upload so serving never has to look at the file
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+    
+    @Column
+    private Integer width;
+    
+    @Column
+    private Integer height;
+    
     @Column(name = "created_at")
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdAt;
@@ -78,6 +92,38 @@ public class PostImage {
         this.url = url;
     }
     
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public void setSizeBytes(Long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+    
+    public Integer getWidth() {
+        return width;
+    }
+    
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+    
+    public Integer getHeight() {
+        return height;
+    }
+    
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+    
     public Date getCreatedAt() {
         return createdAt;
     }
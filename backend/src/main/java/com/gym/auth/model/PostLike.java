@@ -4,7 +4,9 @@ import javax.persistence.*;
 import java.util.Date;
 
 @Entity
-@Table(name = "post_likes")
+@Table(name = "post_likes", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_post_likes_post_user", columnNames = {"post_id", "user_id"})
+})
 public class PostLike {
     
     @Id
@@ -4,7 +4,7 @@ import javax.persistence.*;
 import java.util.Date;
 
 @Entity
-@Table(name = "post_videos")
+@Table(name = "post_videos", indexes = @Index(name = "idx_post_videos_file_name", columnList = "fileName"))
 public class PostVideo {
     
     @Id
@@ -24,9 +24,31 @@ public class PostVideo {
     @Column(nullable = false)
     private String url;
     
+    // SHA-256 of the stored bytes; identical uploads share one content-addressed file
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    // Recorded at upload so serving never has to look at the file
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+    
+    @Column
+    private Integer width;
+    
+    @Column
+    private Integer height;
+    
     @Column
     private Integer duration; // in seconds
     
+    // Average bits per second, from the MP4 container
+    @Column
+    private Long bitrate;
+    
+    // RFC 6381 codecs parameter, e.g. avc1.64001f, mp4a
+    @Column(length = 128)
+    private String codecs;
+    
     @Column(name = "created_at")
     @Temporal(TemporalType.TIMESTAMP)
     private Date createdAt;
@@ -90,6 +112,54 @@ public class PostVideo {
         this.duration = duration;
     }
     
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public void setSizeBytes(Long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+    
+    public Integer getWidth() {
+        return width;
+    }
+    
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+    
+    public Integer getHeight() {
+        return height;
+    }
+    
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+    
+    public Long getBitrate() {
+        return bitrate;
+    }
+    
+    public void setBitrate(Long bitrate) {
+        this.bitrate = bitrate;
+    }
+    
+    public String getCodecs() {
+        return codecs;
+    }
+    
+    public void setCodecs(String codecs) {
+        this.codecs = codecs;
+    }
+    
     public Date getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,154 @@
+package com.gym.auth.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * A resumable upload in progress. Chunks are written into a staging file at their offsets;
+ * receivedBytes is the length of the contiguous prefix that has arrived so far.
+ */
+@Entity
+@Table(name = "upload_sessions", indexes = {
+    @Index(name = "idx_upload_sessions_expires_at", columnList = "expires_at"),
+    @Index(name = "idx_upload_sessions_user_status", columnList = "user_id, status")
+})
+public class UploadSession {
+    
+    public enum Status {
+        OPEN,
+        // Being moved into storage; no more chunks accepted
+        FINALIZING,
+        // Stored and waiting to be attached to a post
+        COMPLETE,
+        ATTACHED
+    }
+    
+    @Id
+    @Column(length = 36)
+    private String id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "file_name")
+    private String fileName;
+    
+    @Column(name = "content_type")
+    private String contentType;
+    
+    @Column(name = "total_size", nullable = false)
+    private long totalSize;
+    
+    @Column(name = "received_bytes", nullable = false)
+    private long receivedBytes;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+    
+    // Set once the upload has been moved into storage
+    @Column(name = "stored_file_name")
+    private String storedFileName;
+    
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+    
+    @Column(name = "expires_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expiresAt;
+    
+    public UploadSession() {
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+    
+    public long getTotalSize() {
+        return totalSize;
+    }
+    
+    public void setTotalSize(long totalSize) {
+        this.totalSize = totalSize;
+    }
+    
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+    
+    public void setReceivedBytes(long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+    
+    public String getStoredFileName() {
+        return storedFileName;
+    }
+    
+    public void setStoredFileName(String storedFileName) {
+        this.storedFileName = storedFileName;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,10 +1,13 @@
 package com.gym.auth.model;
 
+import com.gym.auth.security.UserCacheInvalidator;
+
 import javax.persistence.*;
 import java.util.Date;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserCacheInvalidator.class)
 public class User {
     
     @Id
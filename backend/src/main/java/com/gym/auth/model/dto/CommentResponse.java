@@ -0,0 +1,85 @@
+package com.gym.auth.model.dto;
+
+import com.gym.auth.model.Comment;
+
+import java.util.Date;
+
+public class CommentResponse {
+    private Long id;
+    private String text;
+    private UserSummary user;
+    private Date createdAt;
+    private Date updatedAt;
+    private long version;
+    
+    public CommentResponse() {
+    }
+    
+    public CommentResponse(Comment comment) {
+        this.id = comment.getId();
+        this.text = comment.getText();
+        this.user = new UserSummary(comment.getUser());
+        this.createdAt = comment.getCreatedAt();
+        this.updatedAt = comment.getUpdatedAt();
+        this.version = comment.getVersion();
+    }
+    
+    // Used by JPQL constructor expressions in CommentRepository
+    public CommentResponse(Long id, String text, Long userId, String username, String fullName,
+                           Date createdAt, Date updatedAt, long version) {
+        this.id = id;
+        this.text = text;
+        this.user = new UserSummary(userId, username, fullName);
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.version = version;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public void setText(String text) {
+        this.text = text;
+    }
+    
+    public UserSummary getUser() {
+        return user;
+    }
+    
+    public void setUser(UserSummary user) {
+        this.user = user;
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,29 @@
+package com.gym.auth.model.dto;
+
+/**
+ * What a comment edit or delete needs to authorize and version-check,
+ * read without loading the comment or its post
+ */
+public class CommentWriteState {
+    private final Long authorId;
+    private final Long postAuthorId;
+    private final long version;
+    
+    public CommentWriteState(Long authorId, Long postAuthorId, long version) {
+        this.authorId = authorId;
+        this.postAuthorId = postAuthorId;
+        this.version = version;
+    }
+    
+    public Long getAuthorId() {
+        return authorId;
+    }
+    
+    public Long getPostAuthorId() {
+        return postAuthorId;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+}
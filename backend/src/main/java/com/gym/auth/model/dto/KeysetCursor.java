@@ -0,0 +1,48 @@
+package com.gym.auth.model.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque position in a list ordered by (createdAt, id).
+ * Encoded as URL-safe base64 of "createdAtMillis:id" so clients treat it as a token.
+ */
+public class KeysetCursor {
+    private final Date createdAt;
+    private final Long id;
+    
+    public KeysetCursor(Date createdAt, Long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            long millis = Long.parseLong(raw.substring(0, separator));
+            long id = Long.parseLong(raw.substring(separator + 1));
+            return new KeysetCursor(new Date(millis), id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+    
+    public String encode() {
+        String raw = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+}
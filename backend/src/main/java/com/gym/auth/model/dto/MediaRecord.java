@@ -0,0 +1,43 @@
+package com.gym.auth.model.dto;
+
+import java.util.Date;
+
+/**
+ * What the serving path needs to know about a stored post image or video, as recorded at upload
+ */
+public class MediaRecord {
+    private final String contentType;
+    private final Long sizeBytes;
+    private final String contentHash;
+    private final Date createdAt;
+    
+    public MediaRecord(String contentType, Long sizeBytes, String contentHash, Date createdAt) {
+        this.contentType = contentType;
+        this.sizeBytes = sizeBytes;
+        this.contentHash = contentHash;
+        this.createdAt = createdAt;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+    
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    /**
+     * Rows written before sizes were recorded can't be served from the index alone
+     */
+    public boolean isComplete() {
+        return sizeBytes != null && contentHash != null && createdAt != null && contentType != null;
+    }
+}
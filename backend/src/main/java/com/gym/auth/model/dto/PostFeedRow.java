@@ -0,0 +1,68 @@
+package com.gym.auth.model.dto;
+
+import java.util.Date;
+
+/**
+ * Flat projection of a post and its author, selected by JPQL constructor expression
+ * so rendering a feed page never creates managed entities.
+ */
+public class PostFeedRow {
+    private final Long id;
+    private final String text;
+    private final Long userId;
+    private final String username;
+    private final String fullName;
+    private final Date createdAt;
+    private final Date updatedAt;
+    private final long likesCount;
+    private final long commentsCount;
+    
+    public PostFeedRow(Long id, String text, Long userId, String username, String fullName,
+                       Date createdAt, Date updatedAt, long likesCount, long commentsCount) {
+        this.id = id;
+        this.text = text;
+        this.userId = userId;
+        this.username = username;
+        this.fullName = fullName;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.likesCount = likesCount;
+        this.commentsCount = commentsCount;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getFullName() {
+        return fullName;
+    }
+    
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+    
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public long getLikesCount() {
+        return likesCount;
+    }
+    
+    public long getCommentsCount() {
+        return commentsCount;
+    }
+}
@@ -0,0 +1,25 @@
+package com.gym.auth.model.dto;
+
+public class PostImageRow {
+    private final Long postId;
+    private final Long id;
+    private final String url;
+    
+    public PostImageRow(Long postId, Long id, String url) {
+        this.postId = postId;
+        this.id = id;
+        this.url = url;
+    }
+    
+    public Long getPostId() {
+        return postId;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+}
@@ -1,11 +1,15 @@
 package com.gym.auth.model.dto;
 
+import com.gym.auth.model.ImageVariant;
 import com.gym.auth.model.Post;
 import com.gym.auth.model.PostImage;
 import com.gym.auth.model.PostVideo;
 
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class PostResponse {
@@ -38,8 +42,22 @@ public class PostResponse {
         
         this.createdAt = post.getCreatedAt();
         this.updatedAt = post.getUpdatedAt();
-        this.likesCount = post.getLikes().size();
-        this.commentsCount = post.getComments().size();
+        this.likesCount = post.getLikesCount();
+        this.commentsCount = post.getCommentsCount();
+    }
+    
+    public PostResponse(PostFeedRow row, List<PostImageResponse> images, PostVideoResponse video,
+                        boolean likedByCurrentUser) {
+        this.id = row.getId();
+        this.text = row.getText();
+        this.user = new UserSummary(row.getUserId(), row.getUsername(), row.getFullName());
+        this.images = images;
+        this.video = video;
+        this.createdAt = row.getCreatedAt();
+        this.updatedAt = row.getUpdatedAt();
+        this.likesCount = row.getLikesCount();
+        this.commentsCount = row.getCommentsCount();
+        this.likedByCurrentUser = likedByCurrentUser;
     }
     
     public static PostResponse fromPost(Post post, boolean likedByCurrentUser) {
@@ -48,6 +66,10 @@ public class PostResponse {
         return response;
     }
     
+    public static PostResponse fromPost(Post post, Set<Long> likedPostIds) {
+        return fromPost(post, likedPostIds.contains(post.getId()));
+    }
+    
     public Long getId() {
         return id;
     }
@@ -133,13 +155,30 @@ public class PostResponse {
     public static class PostImageResponse {
         private Long id;
         private String url;
+        // Resized renditions by variant key (thumb, feed, full); clients pick the smallest that fits
+        private Map<String, String> variants;
         
         public PostImageResponse() {
         }
         
+        public PostImageResponse(Long id, String url) {
+            this.id = id;
+            this.url = url;
+            this.variants = variantUrls(url);
+        }
+        
         public PostImageResponse(PostImage image) {
-            this.id = image.getId();
-            this.url = image.getUrl();
+            this(image.getId(), image.getUrl());
+        }
+        
+        private static Map<String, String> variantUrls(String url) {
+            Map<String, String> urls = new LinkedHashMap<>();
+            if (url != null) {
+                for (ImageVariant variant : ImageVariant.values()) {
+                    urls.put(variant.getKey(), url + "?variant=" + variant.getKey());
+                }
+            }
+            return urls;
         }
         
         public Long getId() {
@@ -157,12 +196,25 @@ public class PostResponse {
         public void setUrl(String url) {
             this.url = url;
         }
+        
+        public Map<String, String> getVariants() {
+            return variants;
+        }
+        
+        public void setVariants(Map<String, String> variants) {
+            this.variants = variants;
+        }
     }
     
     public static class PostVideoResponse {
         private Long id;
         private String url;
         private Integer duration;
+        // Lets clients pick a preload strategy and check codec support before fetching anything
+        private Integer width;
+        private Integer height;
+        private Long bitrate;
+        private String codecs;
         
         public PostVideoResponse() {
         }
@@ -171,6 +223,20 @@ public class PostResponse {
             this.id = video.getId();
             this.url = video.getUrl();
             this.duration = video.getDuration();
+            this.width = video.getWidth();
+            this.height = video.getHeight();
+            this.bitrate = video.getBitrate();
+            this.codecs = video.getCodecs();
+        }
+        
+        public PostVideoResponse(PostVideoRow row) {
+            this.id = row.getId();
+            this.url = row.getUrl();
+            this.duration = row.getDuration();
+            this.width = row.getWidth();
+            this.height = row.getHeight();
+            this.bitrate = row.getBitrate();
+            this.codecs = row.getCodecs();
         }
         
         public Long getId() {
@@ -196,5 +262,38 @@ public class PostResponse {
         public void setDuration(Integer duration) {
             this.duration = duration;
         }
+    
+        
+        public Integer getWidth() {
+            return width;
+        }
+        
+        public void setWidth(Integer width) {
+            this.width = width;
+        }
+        
+        public Integer getHeight() {
+            return height;
+        }
+        
+        public void setHeight(Integer height) {
+            this.height = height;
+        }
+        
+        public Long getBitrate() {
+            return bitrate;
+        }
+        
+        public void setBitrate(Long bitrate) {
+            this.bitrate = bitrate;
+        }
+        
+        public String getCodecs() {
+            return codecs;
+        }
+        
+        public void setCodecs(String codecs) {
+            this.codecs = codecs;
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package com.gym.auth.model.dto;
+
+public class PostVideoRow {
+    private final Long postId;
+    private final Long id;
+    private final String url;
+    private final Integer duration;
+    private final Integer width;
+    private final Integer height;
+    private final Long bitrate;
+    private final String codecs;
+    
+    public PostVideoRow(Long postId, Long id, String url, Integer duration,
+                        Integer width, Integer height, Long bitrate, String codecs) {
+        this.postId = postId;
+        this.id = id;
+        this.url = url;
+        this.duration = duration;
+        this.width = width;
+        this.height = height;
+        this.bitrate = bitrate;
+        this.codecs = codecs;
+    }
+    
+    public Long getPostId() {
+        return postId;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public Integer getDuration() {
+        return duration;
+    }
+    
+    public Integer getWidth() {
+        return width;
+    }
+    
+    public Integer getHeight() {
+        return height;
+    }
+    
+    public Long getBitrate() {
+        return bitrate;
+    }
+    
+    public String getCodecs() {
+        return codecs;
+    }
+}
@@ -0,0 +1,103 @@
+package com.gym.auth.model.dto;
+
+/**
+ * Result of storing an upload: the name it is served under and the SHA-256 of its bytes
+ */
+public class StoredFile {
+    private final String fileName;
+    private final String contentHash;
+    private final long size;
+    private final String contentType;
+    private final Integer width;
+    private final Integer height;
+    private final Long durationMillis;
+    private final Long bitrate;
+    private final String codecs;
+    private final String receivedHash;
+    
+    public StoredFile(String fileName, String contentHash, long size) {
+        this(fileName, contentHash, size, null);
+    }
+    
+    public StoredFile(String fileName, String contentHash, long size, String contentType) {
+        this(fileName, contentHash, size, contentType, null, null);
+    }
+    
+    public StoredFile(String fileName, String contentHash, long size, String contentType,
+                      Integer width, Integer height) {
+        this(fileName, contentHash, size, contentType, width, height, null, null, null);
+    }
+    
+    public StoredFile(String fileName, String contentHash, long size, String contentType,
+                      Integer width, Integer height, Long durationMillis, Long bitrate, String codecs) {
+        this(fileName, contentHash, size, contentType, width, height, durationMillis, bitrate, codecs, null);
+    }
+    
+    public StoredFile(String fileName, String contentHash, long size, String contentType,
+                      Integer width, Integer height, Long durationMillis, Long bitrate, String codecs,
+                      String receivedHash) {
+        this.fileName = fileName;
+        this.contentHash = contentHash;
+        this.size = size;
+        this.contentType = contentType;
+        this.width = width;
+        this.height = height;
+        this.durationMillis = durationMillis;
+        this.bitrate = bitrate;
+        this.codecs = codecs;
+        this.receivedHash = receivedHash;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    /**
+     * SHA-256 of the bytes as they were uploaded. Differs from the content hash only when
+     * storage rewrote the file, e.g. to move an MP4's index to the front.
+     */
+    public String getReceivedHash() {
+        return receivedHash != null ? receivedHash : contentHash;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    /**
+     * Content type detected from the stored bytes
+     */
+    public String getContentType() {
+        return contentType;
+    }
+    
+    /**
+     * Pixel dimensions, for images and videos whose header could be read
+     */
+    public Integer getWidth() {
+        return width;
+    }
+    
+    public Integer getHeight() {
+        return height;
+    }
+    
+    /**
+     * Duration, average bitrate and RFC 6381 codecs, for videos whose container could be read
+     */
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+    
+    public Long getBitrate() {
+        return bitrate;
+    }
+    
+    public String getCodecs() {
+        return codecs;
+    }
+}
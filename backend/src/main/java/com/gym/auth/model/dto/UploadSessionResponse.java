@@ -0,0 +1,54 @@
+package com.gym.auth.model.dto;
+
+import com.gym.auth.model.UploadSession;
+
+import java.util.Date;
+
+public class UploadSessionResponse {
+    private String uploadId;
+    private String status;
+    private long offset;
+    private long size;
+    private Date expiresAt;
+    // Set once finalized: the name the video will be served under
+    private String fileName;
+    private String contentHash;
+    
+    public UploadSessionResponse(UploadSession session) {
+        this.uploadId = session.getId();
+        this.status = session.getStatus().name();
+        this.offset = session.getReceivedBytes();
+        this.size = session.getTotalSize();
+        this.expiresAt = session.getExpiresAt();
+        this.fileName = session.getStoredFileName();
+        this.contentHash = session.getContentHash();
+    }
+    
+    public String getUploadId() {
+        return uploadId;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public long getOffset() {
+        return offset;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+}
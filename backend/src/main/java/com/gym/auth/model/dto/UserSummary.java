@@ -10,6 +10,12 @@ public class UserSummary {
     public UserSummary() {
     }
     
+    public UserSummary(Long id, String username, String fullName) {
+        this.id = id;
+        this.username = username;
+        this.fullName = fullName;
+    }
+    
     public UserSummary(User user) {
         this.id = user.getId();
         this.username = user.getUsername();
@@ -0,0 +1,81 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.Comment;
+import com.gym.auth.model.dto.CommentResponse;
+import com.gym.auth.model.dto.CommentWriteState;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CommentRepository extends JpaRepository<Comment, Long> {
+    
+    String COMMENT_RESPONSE = "SELECT new com.gym.auth.model.dto.CommentResponse(" +
+                              "c.id, c.text, u.id, u.username, u.fullName, c.createdAt, c.updatedAt, c.version) " +
+                              "FROM Comment c JOIN c.user u ";
+    
+    /**
+     * All comments of a post, oldest first
+     */
+    @Query(COMMENT_RESPONSE +
+           "WHERE c.post.id = :postId " +
+           "ORDER BY c.createdAt ASC, c.id ASC")
+    List<CommentResponse> findResponsesByPostId(@Param("postId") Long postId);
+    
+    /**
+     * First page of a post's comments, oldest first. Slice skips the count query.
+     */
+    @Query(COMMENT_RESPONSE +
+           "WHERE c.post.id = :postId " +
+           "ORDER BY c.createdAt ASC, c.id ASC")
+    Slice<CommentResponse> findPage(@Param("postId") Long postId, Pageable pageable);
+    
+    /**
+     * Page of a post's comments strictly after the (createdAt, id) cursor
+     */
+    @Query(COMMENT_RESPONSE +
+           "WHERE c.post.id = :postId " +
+           "AND (c.createdAt > :createdAt OR (c.createdAt = :createdAt AND c.id > :id)) " +
+           "ORDER BY c.createdAt ASC, c.id ASC")
+    Slice<CommentResponse> findPageAfter(@Param("postId") Long postId, @Param("createdAt") Date createdAt,
+                                         @Param("id") Long id, Pageable pageable);
+    
+    @Query(COMMENT_RESPONSE + "WHERE c.id = :id")
+    Optional<CommentResponse> findResponseById(@Param("id") Long id);
+    
+    @Query("SELECT new com.gym.auth.model.dto.CommentWriteState(c.user.id, p.user.id, c.version) " +
+           "FROM Comment c JOIN c.post p WHERE c.id = :id AND p.id = :postId")
+    Optional<CommentWriteState> findWriteState(@Param("id") Long id, @Param("postId") Long postId);
+    
+    /**
+     * Compare-and-set edit: succeeds only if the comment is still at the expected version
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Comment c SET c.text = :text, c.updatedAt = :updatedAt, c.version = c.version + 1 " +
+           "WHERE c.id = :id AND c.post.id = :postId AND c.version = :version")
+    int updateText(@Param("id") Long id, @Param("postId") Long postId, @Param("text") String text,
+                   @Param("updatedAt") Date updatedAt, @Param("version") long version);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Comment c WHERE c.id = :id AND c.post.id = :postId AND c.version = :version")
+    int deleteByIdAndPostId(@Param("id") Long id, @Param("postId") Long postId, @Param("version") long version);
+    
+    /**
+     * Remove every comment of a post in one statement, without loading them
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Comment c WHERE c.post.id = :postId")
+    int deleteByPostId(@Param("postId") Long postId);
+}
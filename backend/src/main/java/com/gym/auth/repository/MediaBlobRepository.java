@@ -0,0 +1,64 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.MediaBlob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+    
+    /**
+     * Register a new blob with one reference. Returns 0 if the blob is already known.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO media_blobs (path, content_hash, size_bytes, ref_count, created_at) " +
+                   "SELECT :path, :contentHash, :sizeBytes, 1, CURRENT_TIMESTAMP FROM (SELECT 1) x " +
+                   "WHERE NOT EXISTS (SELECT 1 FROM media_blobs b WHERE b.path = :path)",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("path") String path, @Param("contentHash") String contentHash,
+                       @Param("sizeBytes") long sizeBytes);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount + 1 WHERE b.path = :path")
+    int incrementRefCount(@Param("path") String path);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = b.refCount - 1 WHERE b.path = :path AND b.refCount > 0")
+    int decrementRefCount(@Param("path") String path);
+    
+    /**
+     * Remove the blob row if nothing references it any more; returns 1 if the caller should delete the file
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MediaBlob b WHERE b.path = :path AND b.refCount = 0")
+    int deleteIfUnreferenced(@Param("path") String path);
+    
+    @Query("SELECT b.path FROM MediaBlob b WHERE b.path IN :paths")
+    List<String> findExistingPaths(@Param("paths") Collection<String> paths);
+    
+    /**
+     * Blobs in path order after the given path, for walking the whole table in pages
+     */
+    @Query("SELECT b FROM MediaBlob b WHERE b.path > :after ORDER BY b.path")
+    List<MediaBlob> findPageAfter(@Param("after") String after, Pageable pageable);
+    
+    /**
+     * Correct a drifted reference count, unless it changed since it was read
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaBlob b SET b.refCount = :refCount WHERE b.path = :path AND b.refCount = :expected")
+    int repairRefCount(@Param("path") String path, @Param("expected") long expected, @Param("refCount") long refCount);
+}
@@ -0,0 +1,67 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.MediaPlacement;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface MediaPlacementRepository extends JpaRepository<MediaPlacement, String> {
+    
+    /**
+     * Add buffered requests to a placement. Serving a file means it is on local disk.
+     * Returns 0 if the file has no placement yet.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaPlacement p SET p.recentHits = p.recentHits + :hits, p.lastAccessedAt = :accessedAt, " +
+           "p.localCopy = true WHERE p.path = :path")
+    int recordAccess(@Param("path") String path, @Param("hits") int hits, @Param("accessedAt") Date accessedAt);
+    
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO media_placements (path, tier, local_copy, recent_hits, last_accessed_at) " +
+                   "SELECT :path, 'HOT', TRUE, :hits, :accessedAt FROM (SELECT 1) x " +
+                   "WHERE NOT EXISTS (SELECT 1 FROM media_placements p WHERE p.path = :path)",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("path") String path, @Param("hits") int hits, @Param("accessedAt") Date accessedAt);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaPlacement p SET p.recentHits = p.recentHits / 2 WHERE p.recentHits > 0")
+    int decayHits();
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE MediaPlacement p SET p.localCopy = :localCopy WHERE p.path = :path")
+    int setLocalCopy(@Param("path") String path, @Param("localCopy") boolean localCopy);
+    
+    /**
+     * Videos uploaded before ageCutoff that are still hot and haven't been requested since idleCutoff
+     */
+    @Query("SELECT DISTINCT v.fileName FROM PostVideo v WHERE v.createdAt < :ageCutoff AND NOT EXISTS (" +
+           "SELECT p.path FROM MediaPlacement p WHERE p.path = CONCAT('videos/', v.fileName) " +
+           "AND (p.tier = com.gym.auth.model.MediaPlacement$Tier.COLD OR p.lastAccessedAt >= :idleCutoff))")
+    List<String> findDemotableVideos(@Param("ageCutoff") Date ageCutoff, @Param("idleCutoff") Date idleCutoff,
+                                     Pageable pageable);
+    
+    /**
+     * Cold files whose local copy has been idle since idleCutoff and was kept at least until graceCutoff
+     */
+    @Query("SELECT p.path FROM MediaPlacement p WHERE p.tier = com.gym.auth.model.MediaPlacement$Tier.COLD " +
+           "AND p.localCopy = true AND (p.lastAccessedAt IS NULL OR p.lastAccessedAt < :idleCutoff) " +
+           "AND p.movedAt < :graceCutoff")
+    List<String> findIdleLocalCopies(@Param("idleCutoff") Date idleCutoff, @Param("graceCutoff") Date graceCutoff,
+                                     Pageable pageable);
+    
+    @Query("SELECT p.path FROM MediaPlacement p WHERE p.tier = com.gym.auth.model.MediaPlacement$Tier.COLD " +
+           "AND p.recentHits >= :minHits")
+    List<String> findPromotable(@Param("minHits") int minHits, Pageable pageable);
+}
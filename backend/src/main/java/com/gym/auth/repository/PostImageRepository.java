@@ -0,0 +1,43 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.PostImage;
+import com.gym.auth.model.dto.MediaRecord;
+import com.gym.auth.model.dto.PostImageRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PostImageRepository extends JpaRepository<PostImage, Long> {
+    
+    /**
+     * Images for a whole page of posts in one query, in upload order
+     */
+    @Query("SELECT new com.gym.auth.model.dto.PostImageRow(i.post.id, i.id, i.url) " +
+           "FROM PostImage i WHERE i.post.id IN :postIds ORDER BY i.id")
+    List<PostImageRow> findRowsByPostIds(@Param("postIds") Collection<Long> postIds);
+    
+    /**
+     * Which of these stored file names are still referenced, for the orphan reconciler
+     */
+    @Query("SELECT i.fileName FROM PostImage i WHERE i.fileName IN :fileNames")
+    List<String> findReferencedFileNames(@Param("fileNames") Collection<String> fileNames);
+    
+    /**
+     * Rows per stored file name, as [fileName, count]; each row holds one blob reference
+     */
+    @Query("SELECT i.fileName, COUNT(i) FROM PostImage i WHERE i.fileName IN :fileNames GROUP BY i.fileName")
+    List<Object[]> countByFileNames(@Param("fileNames") Collection<String> fileNames);
+    
+    /**
+     * Recorded metadata for a stored file name; content-addressed files may back several rows
+     */
+    @Query("SELECT new com.gym.auth.model.dto.MediaRecord(i.fileType, i.sizeBytes, i.contentHash, i.createdAt) " +
+           "FROM PostImage i WHERE i.fileName = :fileName ORDER BY i.id")
+    List<MediaRecord> findMediaRecords(@Param("fileName") String fileName, Pageable pageable);
+}
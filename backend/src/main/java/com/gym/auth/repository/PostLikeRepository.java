@@ -0,0 +1,47 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.PostLike;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Set;
+
+@Repository
+public interface PostLikeRepository extends JpaRepository<PostLike, Long> {
+    
+    /**
+     * Of the given posts, return the IDs of those the user has liked, in a single query
+     */
+    @Query("SELECT l.post.id FROM PostLike l WHERE l.user.id = :userId AND l.post.id IN :postIds")
+    Set<Long> findLikedPostIds(@Param("userId") Long userId, @Param("postIds") Collection<Long> postIds);
+    
+    boolean existsByPostIdAndUserId(Long postId, Long userId);
+    
+    /**
+     * Plain insert; the unique (post_id, user_id) key rejects a duplicate. Callers hold the post
+     * lock and have checked that the like is absent, so no range of the index is locked.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO post_likes (post_id, user_id, created_at) VALUES (:postId, :userId, CURRENT_TIMESTAMP)",
+           nativeQuery = true)
+    int insertLike(@Param("postId") Long postId, @Param("userId") Long userId);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PostLike l WHERE l.post.id = :postId AND l.user.id = :userId")
+    int deleteByPostIdAndUserId(@Param("postId") Long postId, @Param("userId") Long userId);
+    
+    /**
+     * Remove every like of a post in one statement, without loading them
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM PostLike l WHERE l.post.id = :postId")
+    int deleteByPostId(@Param("postId") Long postId);
+}
@@ -2,13 +2,98 @@ package com.gym.auth.repository;
 
 import com.gym.auth.model.Post;
 import com.gym.auth.model.User;
+import com.gym.auth.model.dto.PostFeedRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
 import java.util.List;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
+    
+    String FEED_ROW = "SELECT new com.gym.auth.model.dto.PostFeedRow(p.id, p.text, u.id, u.username, u.fullName, " +
+                      "p.createdAt, p.updatedAt, p.likesCount, p.commentsCount) " +
+                      "FROM Post p JOIN p.user u ";
+    
     List<Post> findByUserOrderByCreatedAtDesc(User user);
     List<Post> findAllByOrderByCreatedAtDesc();
-} 
\ No newline at end of file
+    
+    /**
+     * First page of the global feed, newest first, as flat rows. Slice skips the count query.
+     */
+    @Query(FEED_ROW +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<PostFeedRow> findFeed(Pageable pageable);
+    
+    /**
+     * Feed page strictly after the (createdAt, id) cursor.
+     */
+    @Query(FEED_ROW +
+           "WHERE p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<PostFeedRow> findFeedAfter(@Param("createdAt") Date createdAt, @Param("id") Long id, Pageable pageable);
+    
+    @Query(FEED_ROW +
+           "WHERE p.user.id = :userId " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<PostFeedRow> findUserFeed(@Param("userId") Long userId, Pageable pageable);
+    
+    @Query(FEED_ROW +
+           "WHERE p.user.id = :userId " +
+           "AND (p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) " +
+           "ORDER BY p.createdAt DESC, p.id DESC")
+    Slice<PostFeedRow> findUserFeedAfter(@Param("userId") Long userId, @Param("createdAt") Date createdAt,
+                                         @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * Lock the post row until the transaction ends; null if there is no such post. Every writer
+     * of a post's likes takes this first, so concurrent likes queue on one row instead of
+     * deadlocking over post_likes index locks.
+     */
+    @Query(value = "SELECT id FROM posts WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Number lockById(@Param("id") Long id);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE Post p SET p.likesCount = p.likesCount + :delta WHERE p.id = :id")
+    int adjustLikesCount(@Param("id") Long id, @Param("delta") long delta);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE Post p SET p.commentsCount = p.commentsCount + :delta WHERE p.id = :id")
+    int adjustCommentsCount(@Param("id") Long id, @Param("delta") long delta);
+    
+    @Query("SELECT COALESCE(MAX(p.id), 0) FROM Post p")
+    long findMaxId();
+    
+    /**
+     * Recompute likes_count for posts in [fromId, toId] whose stored value has drifted
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE posts SET likes_count = " +
+                   "(SELECT COUNT(*) FROM post_likes l WHERE l.post_id = posts.id) " +
+                   "WHERE id BETWEEN :fromId AND :toId " +
+                   "AND likes_count <> (SELECT COUNT(*) FROM post_likes l WHERE l.post_id = posts.id)",
+           nativeQuery = true)
+    int reconcileLikesCount(@Param("fromId") long fromId, @Param("toId") long toId);
+    
+    /**
+     * Recompute comments_count for posts in [fromId, toId] whose stored value has drifted
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE posts SET comments_count = " +
+                   "(SELECT COUNT(*) FROM comments c WHERE c.post_id = posts.id) " +
+                   "WHERE id BETWEEN :fromId AND :toId " +
+                   "AND comments_count <> (SELECT COUNT(*) FROM comments c WHERE c.post_id = posts.id)",
+           nativeQuery = true)
+    int reconcileCommentsCount(@Param("fromId") long fromId, @Param("toId") long toId);
+}
@@ -0,0 +1,44 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.PostVideo;
+import com.gym.auth.model.dto.MediaRecord;
+import com.gym.auth.model.dto.PostVideoRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PostVideoRepository extends JpaRepository<PostVideo, Long> {
+    
+    /**
+     * Videos for a whole page of posts in one query
+     */
+    @Query("SELECT new com.gym.auth.model.dto.PostVideoRow(v.post.id, v.id, v.url, v.duration, " +
+           "v.width, v.height, v.bitrate, v.codecs) " +
+           "FROM PostVideo v WHERE v.post.id IN :postIds")
+    List<PostVideoRow> findRowsByPostIds(@Param("postIds") Collection<Long> postIds);
+    
+    /**
+     * Which of these stored file names are still referenced, for the orphan reconciler
+     */
+    @Query("SELECT v.fileName FROM PostVideo v WHERE v.fileName IN :fileNames")
+    List<String> findReferencedFileNames(@Param("fileNames") Collection<String> fileNames);
+    
+    /**
+     * Rows per stored file name, as [fileName, count]; each row holds one blob reference
+     */
+    @Query("SELECT v.fileName, COUNT(v) FROM PostVideo v WHERE v.fileName IN :fileNames GROUP BY v.fileName")
+    List<Object[]> countByFileNames(@Param("fileNames") Collection<String> fileNames);
+    
+    /**
+     * Recorded metadata for a stored file name; content-addressed files may back several rows
+     */
+    @Query("SELECT new com.gym.auth.model.dto.MediaRecord(v.fileType, v.sizeBytes, v.contentHash, v.createdAt) " +
+           "FROM PostVideo v WHERE v.fileName = :fileName ORDER BY v.id")
+    List<MediaRecord> findMediaRecords(@Param("fileName") String fileName, Pageable pageable);
+}
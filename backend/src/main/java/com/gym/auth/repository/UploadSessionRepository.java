@@ -0,0 +1,89 @@
+package com.gym.auth.repository;
+
+import com.gym.auth.model.UploadSession;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    
+    Optional<UploadSession> findByIdAndUserId(String id, Long userId);
+    
+    long countByUserIdAndStatus(Long userId, UploadSession.Status status);
+    
+    /**
+     * Record that the bytes up to end have arrived. Never moves the offset backwards, so
+     * overlapping retries of an earlier chunk are harmless.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.receivedBytes = CASE WHEN s.receivedBytes < :end THEN :end ELSE s.receivedBytes END, " +
+           "s.expiresAt = :expiresAt WHERE s.id = :id AND s.status = com.gym.auth.model.UploadSession$Status.OPEN")
+    int advanceReceived(@Param("id") String id, @Param("end") long end, @Param("expiresAt") Date expiresAt);
+    
+    /**
+     * Move a session from one status to another; returns 0 if it was not in the expected status
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.status = :to WHERE s.id = :id AND s.status = :from")
+    int transition(@Param("id") String id, @Param("from") UploadSession.Status from, @Param("to") UploadSession.Status to);
+    
+    // Clears the persistence context so the caller re-reads the finished session
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.status = com.gym.auth.model.UploadSession$Status.COMPLETE, " +
+           "s.storedFileName = :storedFileName, s.contentHash = :contentHash, s.contentType = :contentType, " +
+           "s.expiresAt = :expiresAt " +
+           "WHERE s.id = :id AND s.status = com.gym.auth.model.UploadSession$Status.FINALIZING")
+    int markComplete(@Param("id") String id, @Param("storedFileName") String storedFileName,
+                     @Param("contentHash") String contentHash, @Param("contentType") String contentType,
+                     @Param("expiresAt") Date expiresAt);
+    
+    /**
+     * Claim a finished upload for a post; joins the caller's transaction, so a failed post releases it again
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.status = com.gym.auth.model.UploadSession$Status.ATTACHED " +
+           "WHERE s.id = :id AND s.userId = :userId AND s.expiresAt > :now " +
+           "AND s.status = com.gym.auth.model.UploadSession$Status.COMPLETE")
+    int markAttached(@Param("id") String id, @Param("userId") Long userId, @Param("now") Date now);
+    
+    @Query("SELECT s FROM UploadSession s WHERE s.expiresAt < :now " +
+           "OR s.status = com.gym.auth.model.UploadSession$Status.ATTACHED ORDER BY s.expiresAt")
+    List<UploadSession> findSweepable(@Param("now") Date now, Pageable pageable);
+    
+    /**
+     * Delete a session only if it is still in the state the sweeper saw; returns 1 if the caller owns its files
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id AND s.status = :status " +
+           "AND (s.status = com.gym.auth.model.UploadSession$Status.ATTACHED OR s.expiresAt < :now)")
+    int deleteIfSweepable(@Param("id") String id, @Param("status") UploadSession.Status status, @Param("now") Date now);
+    
+    /**
+     * Which of these video file names belong to finished uploads not yet attached to a post
+     */
+    @Query("SELECT s.storedFileName FROM UploadSession s WHERE s.storedFileName IN :fileNames")
+    List<String> findReferencedFileNames(@Param("fileNames") Collection<String> fileNames);
+    
+    /**
+     * Finished uploads per stored file name, as [fileName, count]. An attached upload has handed
+     * its blob reference to the post, so only COMPLETE ones count.
+     */
+    @Query("SELECT s.storedFileName, COUNT(s) FROM UploadSession s WHERE s.storedFileName IN :fileNames " +
+           "AND s.status = com.gym.auth.model.UploadSession$Status.COMPLETE GROUP BY s.storedFileName")
+    List<Object[]> countCompleteByFileNames(@Param("fileNames") Collection<String> fileNames);
+}
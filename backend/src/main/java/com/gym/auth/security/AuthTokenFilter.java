@@ -1,5 +1,6 @@
 package com.gym.auth.security;
 
+import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,11 +40,15 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             if (jwt != null) {
                 logger.debug("JWT token found in request");
                 
-                if (jwtUtils.validateJwtToken(jwt)) {
-                    String username = jwtUtils.getUserNameFromJwtToken(jwt);
+                Claims claims = jwtUtils.parseValidClaims(jwt);
+                if (claims != null) {
+                    String username = claims.getSubject();
                     logger.debug("JWT token validated for user: {}", username);
 
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                    // Tokens issued with user claims are self-contained; older ones still need a lookup
+                    UserDetails userDetails = claims.containsKey(JwtUtils.CLAIM_USER_ID)
+                            ? UserDetailsImpl.fromClaims(claims)
+                            : userDetailsService.loadUserByUsername(username);
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                             userDetails, null, userDetails.getAuthorities());
                     authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -0,0 +1,48 @@
+package com.gym.auth.security;
+
+import com.gym.auth.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+/**
+ * The authenticated user for the current request, resolved at most once.
+ *
+ * For tokens that carry user claims the User is built from the principal and is only
+ * a reference (id, username, email, full name) - it has no password and must not be saved.
+ * Older subject-only tokens fall back to {@link UserPrincipalCache}.
+ */
+@Component
+@RequestScope
+public class CurrentUserHolder {
+    
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+    
+    private User user;
+    private boolean resolved;
+    
+    public User getUser() {
+        if (!resolved) {
+            user = resolve();
+            resolved = true;
+        }
+        return user;
+    }
+    
+    private User resolve() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserDetailsImpl)) {
+            return null;
+        }
+        
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        if (userDetails.isFromClaims()) {
+            return new User(userDetails.getId(), userDetails.getUsername(), userDetails.getEmail(),
+                            null, userDetails.getFullName(), null);
+        }
+        return userPrincipalCache.findUserById(userDetails.getId()).orElse(null);
+    }
+}
@@ -1,7 +1,6 @@
 package com.gym.auth.security;
 
 import com.gym.auth.model.User;
-import com.gym.auth.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,7 +19,7 @@ public class CurrentUserResolver implements HandlerMethodArgumentResolver {
     private static final Logger logger = LoggerFactory.getLogger(CurrentUserResolver.class);
     
     @Autowired
-    private UserRepository userRepository;
+    private CurrentUserHolder currentUserHolder;
     
     @Override
     public boolean supportsParameter(MethodParameter parameter) {
@@ -50,8 +49,7 @@ public class CurrentUserResolver implements HandlerMethodArgumentResolver {
             UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
             logger.debug("Resolving user with ID: {}", userDetails.getId());
             
-            return userRepository.findById(userDetails.getId())
-                    .orElse(null);
+            return currentUserHolder.getUser();
         } catch (Exception e) {
             logger.error("Error resolving user: {}", e.getMessage(), e);
             return null;
@@ -5,15 +5,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.stream.Collectors;
 
 @Component
 public class JwtUtils {
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_EMAIL = "email";
+    public static final String CLAIM_FULL_NAME = "name";
+    public static final String CLAIM_ROLES = "roles";
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
@@ -23,8 +30,21 @@ public class JwtUtils {
     public String generateJwtToken(Authentication authentication) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
 
-        return Jwts.builder()
-                .setSubject(userPrincipal.getUsername())
+        JwtBuilder builder = Jwts.builder()
+                .setSubject(userPrincipal.getUsername());
+
+        // Carry what a request needs to know about the user, so it can be authenticated without a lookup
+        if (userPrincipal instanceof UserDetailsImpl) {
+            UserDetailsImpl details = (UserDetailsImpl) userPrincipal;
+            builder.claim(CLAIM_USER_ID, details.getId())
+                   .claim(CLAIM_EMAIL, details.getEmail())
+                   .claim(CLAIM_FULL_NAME, details.getFullName())
+                   .claim(CLAIM_ROLES, details.getAuthorities().stream()
+                           .map(GrantedAuthority::getAuthority)
+                           .collect(Collectors.toList()));
+        }
+
+        return builder
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
                 .signWith(SignatureAlgorithm.HS512, jwtSecret)
@@ -35,11 +55,14 @@ public class JwtUtils {
         return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
     }
 
-    public boolean validateJwtToken(String authToken) {
+    /**
+     * Verifies the token and returns its claims, or null if it is not valid
+     */
+    public Claims parseValidClaims(String authToken) {
         try {
             if (authToken == null || authToken.isEmpty()) {
                 logger.error("JWT token is empty or null");
-                return false;
+                return null;
             }
             
             // Debug token information
@@ -47,8 +70,7 @@ public class JwtUtils {
                         authToken.substring(0, Math.min(10, authToken.length())) + "...", 
                         authToken.length());
             
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-            return true;
+            return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken).getBody();
         } catch (SignatureException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -63,6 +85,10 @@ public class JwtUtils {
             logger.error("Unexpected error during token validation: {}", e.getMessage());
         }
 
-        return false;
+        return null;
+    }
+
+    public boolean validateJwtToken(String authToken) {
+        return parseValidClaims(authToken) != null;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.gym.auth.security;
+
+import com.gym.auth.model.User;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA listener on {@link User} that evicts the cached principal whenever the row changes
+ */
+@Component
+public class UserCacheInvalidator {
+    
+    // Resolved lazily: this listener is created while the EntityManagerFactory is still being built
+    @Autowired
+    private ObjectProvider<UserPrincipalCache> principalCache;
+    
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        UserPrincipalCache cache = principalCache.getIfAvailable();
+        if (cache == null) {
+            return;
+        }
+        Long id = user.getId();
+        cache.invalidate(id);
+        
+        // Evict again once committed, so a concurrent reader can't re-cache the pre-commit row
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+}
@@ -2,12 +2,15 @@ package com.gym.auth.security;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.gym.auth.model.User;
+import io.jsonwebtoken.Claims;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class UserDetailsImpl implements UserDetails {
@@ -16,12 +19,17 @@ public class UserDetailsImpl implements UserDetails {
     private Long id;
     private String username;
     private String email;
+    private String fullName;
     
     @JsonIgnore
     private String password;
     
     private Collection<? extends GrantedAuthority> authorities;
 
+    // Built from token claims rather than loaded from the database
+    @JsonIgnore
+    private boolean fromClaims;
+
     public UserDetailsImpl(Long id, String username, String email, String password, Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
         this.username = username;
@@ -30,6 +38,12 @@ public class UserDetailsImpl implements UserDetails {
         this.authorities = authorities;
     }
 
+    public UserDetailsImpl(Long id, String username, String email, String fullName, String password,
+                           Collection<? extends GrantedAuthority> authorities) {
+        this(id, username, email, password, authorities);
+        this.fullName = fullName;
+    }
+
     public static UserDetailsImpl build(User user) {
         // For simplicity, all users have USER role
         GrantedAuthority authority = new SimpleGrantedAuthority("ROLE_USER");
@@ -38,10 +52,34 @@ public class UserDetailsImpl implements UserDetails {
                 user.getId(),
                 user.getUsername(),
                 user.getEmail(),
+                user.getFullName(),
                 user.getPassword(),
                 Collections.singletonList(authority));
     }
 
+    /**
+     * Rebuilds a principal from verified token claims; there is no password on this path
+     */
+    public static UserDetailsImpl fromClaims(Claims claims) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        Object roles = claims.get(JwtUtils.CLAIM_ROLES);
+        if (roles instanceof Collection) {
+            for (Object role : (Collection<?>) roles) {
+                authorities.add(new SimpleGrantedAuthority(String.valueOf(role)));
+            }
+        }
+
+        UserDetailsImpl details = new UserDetailsImpl(
+                ((Number) claims.get(JwtUtils.CLAIM_USER_ID)).longValue(),
+                claims.getSubject(),
+                claims.get(JwtUtils.CLAIM_EMAIL, String.class),
+                claims.get(JwtUtils.CLAIM_FULL_NAME, String.class),
+                null,
+                authorities);
+        details.fromClaims = true;
+        return details;
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
@@ -55,6 +93,17 @@ public class UserDetailsImpl implements UserDetails {
         return email;
     }
 
+    public String getFullName() {
+        return fullName;
+    }
+
+    /**
+     * True if this principal was rebuilt from token claims by {@link #fromClaims(Claims)}
+     */
+    public boolean isFromClaims() {
+        return fromClaims;
+    }
+
     @Override
     public String getPassword() {
         return password;
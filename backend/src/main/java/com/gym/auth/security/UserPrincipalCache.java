@@ -0,0 +1,158 @@
+package com.gym.auth.security;
+
+import com.gym.auth.model.User;
+import com.gym.auth.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded, TTL-based cache of users keyed by id and username, so authenticated
+ * requests don't go back to the users table on every call.
+ *
+ * Entries are invalidated by {@link UserCacheInvalidator} whenever a user row
+ * is written; the TTL only bounds staleness for writes made outside JPA.
+ * Callers always get their own copy of the {@link User}, never the cached one.
+ */
+@Component
+public class UserPrincipalCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserPrincipalCache.class);
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Value("${app.security.principal-cache.max-size:10000}")
+    private int maxSize;
+    
+    @Value("${app.security.principal-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+    
+    private final Object lock = new Object();
+    
+    // Access-ordered so the eldest entry is the least recently used one
+    private final LinkedHashMap<Long, Entry> byId = new LinkedHashMap<Long, Entry>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            if (size() > maxSize) {
+                idsByUsername.remove(eldest.getValue().user.getUsername());
+                return true;
+            }
+            return false;
+        }
+    };
+    
+    private final Map<String, Long> idsByUsername = new HashMap<>();
+    
+    public Optional<User> findUserById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        Entry entry = get(id);
+        if (entry == null) {
+            entry = load(userRepository.findById(id));
+        }
+        return entry != null ? Optional.of(copy(entry.user)) : Optional.empty();
+    }
+    
+    public Optional<User> findUserByUsername(String username) {
+        return findEntryByUsername(username).map(entry -> copy(entry.user));
+    }
+    
+    public Optional<UserDetailsImpl> findDetailsByUsername(String username) {
+        return findEntryByUsername(username).map(entry -> entry.details);
+    }
+    
+    public void invalidate(Long id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (lock) {
+            Entry removed = byId.remove(id);
+            if (removed != null) {
+                idsByUsername.remove(removed.user.getUsername());
+            }
+        }
+    }
+    
+    public void invalidateAll() {
+        synchronized (lock) {
+            byId.clear();
+            idsByUsername.clear();
+        }
+    }
+    
+    private Optional<Entry> findEntryByUsername(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        Entry entry = null;
+        synchronized (lock) {
+            Long id = idsByUsername.get(username);
+            if (id != null) {
+                entry = getLocked(id);
+            }
+        }
+        if (entry == null) {
+            entry = load(userRepository.findByUsername(username));
+        }
+        return Optional.ofNullable(entry);
+    }
+    
+    private Entry get(Long id) {
+        synchronized (lock) {
+            return getLocked(id);
+        }
+    }
+    
+    private Entry getLocked(Long id) {
+        Entry entry = byId.get(id);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            byId.remove(id);
+            idsByUsername.remove(entry.user.getUsername());
+            return null;
+        }
+        return entry;
+    }
+    
+    private Entry load(Optional<User> loaded) {
+        if (!loaded.isPresent()) {
+            return null;
+        }
+        User user = copy(loaded.get());
+        Entry entry = new Entry(user, UserDetailsImpl.build(user), System.currentTimeMillis() + ttlSeconds * 1000);
+        synchronized (lock) {
+            Entry previous = byId.put(user.getId(), entry);
+            if (previous != null && !previous.user.getUsername().equals(user.getUsername())) {
+                idsByUsername.remove(previous.user.getUsername());
+            }
+            idsByUsername.put(user.getUsername(), user.getId());
+        }
+        logger.debug("Cached principal for user {}", user.getId());
+        return entry;
+    }
+    
+    private static User copy(User user) {
+        return new User(user.getId(), user.getUsername(), user.getEmail(), user.getPassword(),
+                        user.getFullName(), user.getCreatedAt());
+    }
+    
+    private static class Entry {
+        final User user;
+        final UserDetailsImpl details;
+        final long expiresAt;
+        
+        Entry(User user, UserDetailsImpl details, long expiresAt) {
+            this.user = user;
+            this.details = details;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -72,6 +72,7 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
             .antMatchers(HttpMethod.OPTIONS, "/**").permitAll() // Allow preflight requests
             .antMatchers("/api/auth/**").permitAll() // Authentication endpoints
             .antMatchers("/api/test/**").permitAll() // Public test endpoints
+            .antMatchers("/api/admin/**").authenticated() // Cache and storage stats; never public
             .antMatchers("/api/files/**").permitAll() // Allow public access to files
             .antMatchers("/h2-console/**").permitAll() // H2 Console access
             .antMatchers("/api/posts/**").authenticated() // Fix: Posts APIs require authentication
@@ -0,0 +1,88 @@
+package com.gym.auth.service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A place stored media can live. Blobs are addressed by their upload path, e.g.
+ * videos/<name>.mp4, and are written and read whole through local files.
+ *
+ * {@link LocalBlobStore} is the fast tier everything is served from; the others hold cold
+ * copies that {@link MediaTieringService} moves blobs to and restores them from.
+ */
+public interface BlobStore {
+
+    /**
+     * Short name recorded with each cold blob, so it can be found again if the configured
+     * cold store changes
+     */
+    String getName();
+
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Store a copy of a local file; the blob is durable once this returns
+     */
+    void put(String key, Path source) throws IOException;
+
+    /**
+     * Write the blob's bytes to target, replacing it. Throws NoSuchFileException if there is no such blob.
+     */
+    void get(String key, Path target) throws IOException;
+
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Visit every blob stored under a directory, e.g. videos. Unfinished writes are skipped.
+     */
+    void list(String directory, BlobVisitor visitor) throws IOException;
+
+    static String directoryOf(String key) {
+        return key.substring(0, key.lastIndexOf('/'));
+    }
+
+    static String fileNameOf(String key) {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * List the files in a local directory tree as blobs of the given directory, dropping
+     * suffix from their names. Dot files are unfinished writes and variants/ is not a blob
+     * directory of its own, so both are skipped.
+     */
+    static void listFiles(Path base, String directory, String suffix, BlobVisitor visitor) throws IOException {
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+        Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.equals(base.resolve("variants")) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && !name.startsWith(".") && name.endsWith(suffix)) {
+                    visitor.visit(directory + "/" + name.substring(0, name.length() - suffix.length()),
+                            attrs.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Removed while we were walking
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    interface BlobVisitor {
+        void visit(String key, long lastModifiedMillis) throws IOException;
+    }
+}
@@ -0,0 +1,97 @@
+package com.gym.auth.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier in a separate directory, typically on cheaper and slower disks. Each blob is
+ * gzipped into videos/ab/cd/<name>.gz, sharded like the upload directory.
+ */
+@Component
+public class CompressedBlobStore implements BlobStore {
+
+    public static final String NAME = "compressed";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${file.storage.cold.dir:./uploads-cold}")
+    private String coldDir;
+
+    // Video is already compressed, so a fast level gets nearly all there is to gain
+    @Value("${file.storage.cold.compression-level:1}")
+    private int compressionLevel;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(path(key));
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = path(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(".put-" + UUID.randomUUID() + ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE) {
+                {
+                    def.setLevel(compressionLevel);
+                }
+            }) {
+                Files.copy(source, out);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path(key)), BUFFER_SIZE)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(path(key));
+    }
+
+    @Override
+    public void list(String directory, BlobVisitor visitor) throws IOException {
+        BlobStore.listFiles(root().resolve(directory), directory, ".gz", visitor);
+    }
+
+    private Path path(String key) {
+        String fileName = BlobStore.fileNameOf(key);
+        if (!MediaPathResolver.isValidName(fileName)) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        String shard = MediaPathResolver.shardOf(fileName);
+        return root()
+                .resolve(BlobStore.directoryOf(key))
+                .resolve(shard.substring(0, 2))
+                .resolve(shard.substring(2, 4))
+                .resolve(fileName + ".gz");
+    }
+
+    private Path root() {
+        return Paths.get(coldDir).toAbsolutePath().normalize();
+    }
+}
@@ -1,8 +1,25 @@
 package com.gym.auth.service;
 
+import com.gym.auth.model.dto.StoredFile;
 import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.nio.file.Path;
  
 public interface FileStorageService {
+    
+    /**
+     * The upload's content is not acceptable, e.g. a video over the length limit; nothing was stored
+     */
+    class RejectedUploadException extends IllegalArgumentException {
+        public RejectedUploadException(String message) {
+            super(message);
+        }
+    }
+    
     String storeFile(MultipartFile file, String directory);
+    StoredFile store(MultipartFile file, String directory);
+    StoredFile store(InputStream in, String originalFileName, String contentType, String directory);
+    StoredFile store(Path source, String originalFileName, String contentType, String directory);
     void deleteFile(String fileName);
 } 
\ No newline at end of file
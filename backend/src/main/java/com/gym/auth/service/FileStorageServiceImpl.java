@@ -1,15 +1,32 @@
 package com.gym.auth.service;
 
+import com.gym.auth.model.dto.StoredFile;
+import com.gym.auth.repository.MediaBlobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 @Service
@@ -17,61 +34,376 @@ public class FileStorageServiceImpl implements FileStorageService {
 
     private static final Logger logger = Logger.getLogger(FileStorageServiceImpl.class.getName());
 
-    @Value("${file.upload-dir:uploads}")
-    private String uploadDir;
+    private static final String MODE_CONTENT_ADDRESSED = "content-addressed";
+    private static final int LOCK_STRIPES = 64;
+    private static final String IMAGE_PREFIX = "images/";
+    private static final String VIDEO_DIRECTORY = "videos";
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    // uuid: every upload gets its own file; content-addressed: identical uploads share one blob
+    @Value("${file.storage.mode:uuid}")
+    private String storageMode;
+
+    @Autowired
+    private MediaBlobRepository mediaBlobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private UploadAdmission uploadAdmission;
+
+    @Autowired
+    private MediaTypeDetector mediaTypeDetector;
+
+    @Autowired
+    private MediaTieringService mediaTieringService;
+
+    @Value("${app.uploads.video.max-duration-seconds:30}")
+    private int maxVideoDurationSeconds;
+
+    // Encoders often overshoot a cut by a frame or two
+    @Value("${app.uploads.video.duration-tolerance-ms:500}")
+    private long videoDurationToleranceMs;
+
+    // Move the MP4 index in front of the media data so playback can start before the download ends
+    @Value("${app.uploads.video.faststart.enabled:true}")
+    private boolean faststartEnabled;
+
+    // Reference counts are committed on their own, independently of the caller's transaction
+    private TransactionTemplate blobTransaction;
+
+    // Serializes "file exists / refcount changes / file removed" for one blob path
+    private final ReentrantLock[] blobLocks = new ReentrantLock[LOCK_STRIPES];
+
+    public FileStorageServiceImpl() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            blobLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        blobTransaction = new TransactionTemplate(transactionManager);
+        blobTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        logger.info("File storage mode: " + storageMode);
+    }
 
     @Override
     public String storeFile(MultipartFile file, String subDirectory) {
+        return store(file, subDirectory).getFileName();
+    }
+
+    @Override
+    public StoredFile store(MultipartFile file, String subDirectory) {
+        try (InputStream in = file.getInputStream()) {
+            return store(in, file.getOriginalFilename(), file.getContentType(), subDirectory);
+        } catch (IOException ex) {
+            logger.severe("Failed to store file: " + ex.getMessage());
+            throw new RuntimeException("Failed to store file", ex);
+        }
+    }
+
+    /**
+     * Stream an upload into storage. The bytes are written once, to a temporary file in the
+     * target directory, and then renamed into place.
+     */
+    @Override
+    public StoredFile store(InputStream source, String originalFileName, String contentType, String subDirectory) {
         try {
-            // Create directories if they don't exist
-            Path uploadPath = Paths.get(uploadDir).resolve(subDirectory).toAbsolutePath();
+            // Create directories if they don't exist; uploads are staged here, then renamed into their shard
+            Path uploadPath = mediaPathResolver.root().resolve(subDirectory);
             logger.info("Creating upload directory if needed: " + uploadPath);
-            
+
             if (!Files.exists(uploadPath)) {
                 logger.info("Creating directories: " + uploadPath);
                 Files.createDirectories(uploadPath);
             }
-            
-            // Generate a unique filename
-            String originalFileName = file.getOriginalFilename();
-            String fileExtension = "";
-            
-            if (originalFileName != null && originalFileName.contains(".")) {
-                fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+
+            String fileExtension = extensionOf(originalFileName);
+
+            // Hash while the upload streams to a temporary file, so the bytes are read only once
+            Path tempFile = uploadPath.resolve(".upload-" + UUID.randomUUID() + ".tmp");
+            MessageDigest digest = sha256();
+            long size;
+            // The caller has admitted the upload; each buffer written still pays the byte budget
+            try (OutputStream out = Files.newOutputStream(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                size = uploadAdmission.copy(new DigestInputStream(source, digest), (buffer, length) -> out.write(buffer, 0, length));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
             }
-            
-            String fileName = UUID.randomUUID().toString() + fileExtension;
-            Path targetLocation = uploadPath.resolve(fileName);
-            
-            logger.info("Storing file at: " + targetLocation);
-            
-            // Copy the file to the target location
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            
-            // Make sure the file is readable
-            if (!Files.isReadable(targetLocation)) {
-                logger.warning("File is not readable after saving: " + targetLocation);
-            } else {
-                logger.info("File stored successfully and is readable: " + fileName);
+            try {
+                return place(tempFile, subDirectory, fileExtension, toHex(digest.digest()), size, contentType);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
             }
-            
-            return fileName;
         } catch (IOException ex) {
             logger.severe("Failed to store file: " + ex.getMessage());
-            throw new RuntimeException("Failed to store file", ex);
+            throw new UncheckedIOException("Failed to store file", ex);
+        }
+    }
+
+    /**
+     * Take over a file that is already complete on disk, such as a finished resumable upload.
+     * It is read once to hash it and then renamed into place, so the bytes are not copied.
+     */
+    @Override
+    public StoredFile store(Path source, String originalFileName, String contentType, String subDirectory) {
+        try {
+            return place(source, subDirectory, extensionOf(originalFileName), sha256Hex(source), Files.size(source),
+                    contentType);
+        } catch (IOException ex) {
+            logger.severe("Failed to store file: " + ex.getMessage());
+            throw new UncheckedIOException("Failed to store file", ex);
+        }
+    }
+
+    /**
+     * Rename a fully written temporary file to its final name in the layout. The content type
+     * the client declared is only logged; what is recorded is detected from the bytes. Files of
+     * no recognized type, videos whose length can't be read and videos over the length limit
+     * are rejected here, before they are stored, and MP4s with their index at the end are
+     * stored as a faststart copy instead.
+     */
+    private StoredFile place(Path tempFile, String subDirectory, String fileExtension, String contentHash,
+                             long size, String declaredType) throws IOException {
+        MediaTypeDetector.Probe probe;
+        try {
+            probe = mediaTypeDetector.probe(tempFile);
+        } catch (Mp4BoxParser.MalformedMp4Exception e) {
+            throw new RejectedUploadException("Unreadable video: " + e.getMessage());
+        }
+        if (!probe.isKnown()) {
+            throw new RejectedUploadException("Unsupported file type");
+        }
+        if (VIDEO_DIRECTORY.equals(subDirectory)
+                && (!probe.getContentType().startsWith("video/") || probe.getDurationMillis() == null)) {
+            // A video whose length we can't read can't be held to the limit
+            throw new RejectedUploadException("Not a video we can read the length of");
+        }
+        if (probe.getDurationMillis() != null
+                && probe.getDurationMillis() > maxVideoDurationSeconds * 1000L + videoDurationToleranceMs) {
+            throw new RejectedUploadException(String.format("Video is %.1f seconds long; the limit is %d seconds",
+                    probe.getDurationMillis() / 1000.0, maxVideoDurationSeconds));
+        }
+        String contentType = probe.getContentType();
+        if (declaredType != null && !declaredType.equalsIgnoreCase(contentType)) {
+            logger.info("Upload declared as " + declaredType + " was detected as " + contentType);
+        }
+
+        Path faststart = faststartEnabled ? faststart(tempFile, contentType) : null;
+        if (faststart == null) {
+            return moveIntoPlace(tempFile, subDirectory, fileExtension, contentHash, contentHash, size, probe);
+        }
+        StoredFile stored;
+        try {
+            // Same length, different bytes: the stored name and ETag must come from what is served
+            stored = moveIntoPlace(faststart, subDirectory, fileExtension, sha256Hex(faststart), contentHash, size, probe);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(faststart);
+            throw e;
+        }
+        Files.deleteIfExists(tempFile);
+        return stored;
+    }
+
+    private StoredFile moveIntoPlace(Path tempFile, String subDirectory, String fileExtension, String contentHash,
+                                     String receivedHash, long size, MediaTypeDetector.Probe probe) throws IOException {
+        if (!MODE_CONTENT_ADDRESSED.equals(storageMode)) {
+            // Generate a unique filename
+            String fileName = UUID.randomUUID().toString() + fileExtension;
+            Path targetLocation = mediaPathResolver.writePath(subDirectory, fileName);
+            logger.info("Storing file at: " + targetLocation);
+            Files.createDirectories(targetLocation.getParent());
+            Files.move(tempFile, targetLocation, StandardCopyOption.ATOMIC_MOVE);
+            return storedFile(fileName, contentHash, receivedHash, size, probe);
+        }
+
+        String fileName = contentHash + fileExtension;
+        storeBlob(tempFile, subDirectory, fileName, contentHash, size);
+        return storedFile(fileName, contentHash, receivedHash, size, probe);
+    }
+
+    /**
+     * Write a faststart copy of an MP4 next to the upload, or return null if it already is one,
+     * isn't an MP4, or can't be rewritten. A failed rewrite only costs progressive playback,
+     * so the upload is then stored as it came.
+     */
+    private static Path faststart(Path tempFile, String contentType) {
+        if (!"video/mp4".equals(contentType) && !"video/quicktime".equals(contentType)) {
+            return null;
+        }
+        Path target = tempFile.resolveSibling(".faststart-" + UUID.randomUUID() + ".tmp");
+        try {
+            if (Mp4FaststartRewriter.rewrite(tempFile, target)) {
+                logger.info("Moved MP4 index to the front of " + tempFile.getFileName());
+                return target;
+            }
+        } catch (IOException e) {
+            logger.warning("Could not rewrite MP4 for faststart: " + e.getMessage());
+        }
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            logger.warning("Could not delete " + target + ": " + e.getMessage());
         }
+        return null;
+    }
+
+    private static StoredFile storedFile(String fileName, String contentHash, String receivedHash, long size,
+                                         MediaTypeDetector.Probe probe) {
+        return new StoredFile(fileName, contentHash, size, probe.getContentType(), probe.getWidth(), probe.getHeight(),
+                probe.getDurationMillis(), probe.getBitrate(), probe.getCodecs(), receivedHash);
+    }
+
+    private static String extensionOf(String originalFileName) {
+        if (originalFileName == null || !originalFileName.contains(".")) {
+            return "";
+        }
+        String fileExtension = originalFileName.substring(originalFileName.lastIndexOf(".")).toLowerCase();
+        // The name comes from the client; keep only a plain extension
+        return fileExtension.matches("\\.[a-z0-9]{1,10}") ? fileExtension : "";
     }
 
     @Override
     public void deleteFile(String filePath) {
+        if (mediaBlobRepository.existsById(filePath)) {
+            // Shared blob: drop this reference once the caller's transaction has committed
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        releaseBlob(filePath);
+                    }
+                });
+            } else {
+                releaseBlob(filePath);
+            }
+            return;
+        }
+
         try {
-            Path fileToDelete = Paths.get(uploadDir).resolve(filePath).toAbsolutePath();
-            logger.info("Deleting file: " + fileToDelete);
-            
-            Files.deleteIfExists(fileToDelete);
+            logger.info("Deleting file: " + filePath);
+
+            deleteFromDisk(filePath);
             logger.info("File deleted successfully: " + filePath);
         } catch (IOException ex) {
             logger.severe("Failed to delete file: " + filePath + ", error: " + ex.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    private void storeBlob(Path tempFile, String subDirectory, String fileName, String contentHash, long size)
+            throws IOException {
+        String blobPath = subDirectory + "/" + fileName;
+        ReentrantLock lock = lockFor(blobPath);
+        lock.lock();
+        try {
+            if (mediaPathResolver.exists(subDirectory, fileName)) {
+                Files.delete(tempFile);
+                logger.info("Deduplicated upload against existing blob: " + blobPath);
+            } else {
+                try {
+                    Path target = mediaPathResolver.writePath(subDirectory, fileName);
+                    Files.createDirectories(target.getParent());
+                    Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    Files.deleteIfExists(tempFile);
+                }
+                logger.info("Stored new blob: " + blobPath);
+            }
+
+            blobTransaction.executeWithoutResult(status -> {
+                if (mediaBlobRepository.incrementRefCount(blobPath) == 0) {
+                    mediaBlobRepository.insertIfAbsent(blobPath, contentHash, size);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+
+        // If the caller's transaction rolls back, nothing will ever reference this upload
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        releaseBlob(blobPath);
+                    }
+                }
+            });
+        }
+    }
+
+    private void releaseBlob(String blobPath) {
+        ReentrantLock lock = lockFor(blobPath);
+        lock.lock();
+        try {
+            Boolean unreferenced = blobTransaction.execute(status ->
+                mediaBlobRepository.decrementRefCount(blobPath) > 0
+                    && mediaBlobRepository.deleteIfUnreferenced(blobPath) > 0);
+
+            if (Boolean.TRUE.equals(unreferenced)) {
+                deleteFromDisk(blobPath);
+                logger.info("Deleted blob with no remaining references: " + blobPath);
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.severe("Failed to release blob: " + blobPath + ", error: " + ex.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a stored file, given as directory/name, any cold copy of it and any image variants
+     * rendered from it
+     */
+    private void deleteFromDisk(String filePath) throws IOException {
+        int slash = filePath.lastIndexOf('/');
+        String directory = filePath.substring(0, slash);
+        String fileName = filePath.substring(slash + 1);
+
+        mediaPathResolver.delete(directory, fileName);
+        mediaTieringService.forget(filePath);
+        if (filePath.startsWith(IMAGE_PREFIX)) {
+            imageVariantService.deleteVariants(fileName);
+        }
+    }
+
+    private ReentrantLock lockFor(String blobPath) {
+        return blobLocks[(blobPath.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private static String sha256Hex(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] chunk = new byte[64 * 1024];
+            while (in.read(chunk) != -1) {
+                // Digest updates as it reads
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
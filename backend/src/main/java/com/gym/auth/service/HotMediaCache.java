@@ -0,0 +1,209 @@
+package com.gym.auth.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the bytes of the most requested media files in off-heap memory, bounded by total size.
+ *
+ * Admission follows TinyLFU: a file only displaces cached ones if a {@link FrequencySketch}
+ * says it has been requested more often than the entries it would evict, so a burst of
+ * one-off requests can't flush the trending images. Eviction among cached entries is LRU.
+ * Entries are keyed by path and checked against the file's ETag, so a replaced file is
+ * never served from a stale copy.
+ */
+@Component
+public class HotMediaCache {
+
+    private static final Logger logger = Logger.getLogger(HotMediaCache.class.getName());
+
+    // Rough average entry size, used to size the frequency sketch
+    private static final long TYPICAL_ENTRY_BYTES = 32 * 1024;
+
+    @Value("${app.media.hot-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.media.hot-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    // Larger files (videos, mostly) are left to sendfile
+    @Value("${app.media.hot-cache.max-entry-bytes:2097152}")
+    private long maxEntryBytes;
+
+    private final Object lock = new Object();
+
+    // Access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Set<Path> loading = new HashSet<>();
+    private FrequencySketch sketch;
+    private long usedBytes;
+
+    private long hits;
+    private long misses;
+    private long admissions;
+    private long rejections;
+    private long evictions;
+
+    @PostConstruct
+    public void init() {
+        sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE / 2, Math.max(1, maxBytes / TYPICAL_ENTRY_BYTES)));
+        if (enabled) {
+            logger.info("Hot media cache: " + maxBytes + " bytes, entries up to " + maxEntryBytes + " bytes");
+        }
+    }
+
+    /**
+     * The file's bytes as a read-only buffer of its own, loading them if the file earns a place
+     * in the cache. Returns null when the caller should read from disk instead.
+     */
+    public ByteBuffer get(MediaMetadataCache.FileMetadata metadata) {
+        if (!enabled || metadata.getSize() == 0 || metadata.getSize() > Math.min(maxEntryBytes, maxBytes)) {
+            return null;
+        }
+        Path key = metadata.getPath();
+
+        synchronized (lock) {
+            sketch.increment(key);
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.etag.equals(metadata.getEtag())) {
+                    hits++;
+                    return entry.buffer.duplicate();
+                }
+                removeLocked(key);
+            }
+            misses++;
+            if (loading.contains(key) || !admitLocked(key, metadata.getSize())) {
+                return null;
+            }
+            loading.add(key);
+        }
+
+        ByteBuffer buffer = null;
+        try {
+            buffer = load(key, metadata.getSize());
+        } catch (IOException e) {
+            logger.fine("Could not cache " + key.getFileName() + ": " + e.getMessage());
+        }
+
+        synchronized (lock) {
+            loading.remove(key);
+            if (buffer == null) {
+                return null;
+            }
+            // Another file may have been admitted meanwhile; make room again
+            evictLocked(metadata.getSize());
+            entries.put(key, new Entry(buffer, metadata.getEtag()));
+            usedBytes += metadata.getSize();
+            admissions++;
+        }
+        return buffer.duplicate();
+    }
+
+    public void invalidate(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (lock) {
+            removeLocked(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (lock) {
+            entries.clear();
+            usedBytes = 0;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            long requests = hits + misses;
+            stats.put("enabled", enabled);
+            stats.put("maxBytes", maxBytes);
+            stats.put("usedBytes", usedBytes);
+            stats.put("entries", entries.size());
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRatio", requests == 0 ? 0.0 : (double) hits / requests);
+            stats.put("admissions", admissions);
+            stats.put("rejections", rejections);
+            stats.put("evictions", evictions);
+        }
+        return stats;
+    }
+
+    /**
+     * TinyLFU admission: the candidate gets in if there is free room, or if it is more
+     * popular than every LRU victim that would have to go to make room for it
+     */
+    private boolean admitLocked(Path key, long size) {
+        long needed = usedBytes + size - maxBytes;
+        if (needed <= 0) {
+            return true;
+        }
+        int candidateFrequency = sketch.frequency(key);
+        for (Map.Entry<Path, Entry> victim : entries.entrySet()) {
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                rejections++;
+                return false;
+            }
+            needed -= victim.getValue().buffer.capacity();
+            if (needed <= 0) {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private void evictLocked(long size) {
+        Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes + size > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().getValue().buffer.capacity();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void removeLocked(Path key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.buffer.capacity();
+        }
+    }
+
+    private static ByteBuffer load(Path file, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("File shorter than its metadata");
+                }
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static class Entry {
+        private final ByteBuffer buffer;
+        private final String etag;
+
+        Entry(ByteBuffer buffer, String etag) {
+            this.buffer = buffer;
+            this.etag = etag;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.ImageVariant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Produces resized, re-encoded renditions of post images with ImageIO and caches them on disk
+ * under images/variants/{variant}/ (sharded like the originals). Variants are generated on first request, or at upload
+ * time when app.images.variants.eager is set.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = Logger.getLogger(ImageVariantService.class.getName());
+
+    private static final String VARIANT_DIRECTORY = "variants";
+    private static final String JPEG = "image/jpeg";
+    private static final String PNG = "image/png";
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    @Value("${app.images.variants.eager:false}")
+    private boolean eager;
+
+    @Value("${app.images.variants.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    // One generation per variant file at a time; concurrent requests wait for the same result
+    private final ConcurrentMap<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Path of the requested rendition, generating it if needed. Falls back to the original
+     * when the image is already small enough or is not something worth re-encoding.
+     * contentType is the type recorded for the original when it was uploaded.
+     */
+    public Path resolve(Path original, String contentType, ImageVariant variant) throws IOException {
+        if (!isResizable(contentType)) {
+            return original;
+        }
+        Path target = variantPath(original.getFileName().toString(), variant);
+        if (Files.exists(target)) {
+            return target;
+        }
+
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(target, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            future.complete(generate(original, PNG.equals(contentType), target, variant));
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(target, future);
+        }
+        return await(future);
+    }
+
+    /**
+     * Render every variant of a freshly stored image when eager generation is on
+     */
+    public void onImageStored(String fileName, String contentType) {
+        if (!eager) {
+            return;
+        }
+        Path original = mediaPathResolver.resolve("images", fileName);
+        for (ImageVariant variant : ImageVariant.values()) {
+            try {
+                resolve(original, contentType, variant);
+            } catch (IOException e) {
+                logger.warning("Could not pre-render " + variant.getKey() + " for " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void deleteVariants(String fileName) {
+        for (ImageVariant variant : ImageVariant.values()) {
+            try {
+                mediaPathResolver.delete(variantDirectory(variant), fileName);
+            } catch (IOException e) {
+                logger.warning("Failed to delete " + variant.getKey() + " variant of " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Path generate(Path original, boolean png, Path target, ImageVariant variant) throws IOException {
+        BufferedImage source = read(original, variant.getMaxEdge());
+        if (source == null) {
+            return original;
+        }
+
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double scale = Math.min(1.0, (double) variant.getMaxEdge() / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage resized = new BufferedImage(targetWidth, targetHeight,
+                png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(".variant-" + UUID.randomUUID() + ".tmp");
+        try {
+            if (png) {
+                ImageIO.write(resized, "png", temp.toFile());
+            } else {
+                writeJpeg(resized, temp);
+            }
+            // Re-encoding can make small images bigger; keep whichever is smaller
+            if (Files.size(temp) >= Files.size(original)) {
+                Files.copy(original, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.info("Generated " + variant.getKey() + " variant " + targetWidth + "x" + targetHeight
+                + " for " + original.getFileName());
+        return target;
+    }
+
+    /**
+     * Decode the image, skipping pixels at read time when the source is far larger than needed
+     * so a 12MP photo never has to be held in memory at full resolution. The result is turned
+     * upright according to its EXIF orientation, since re-encoding drops the tag.
+     */
+    static BufferedImage read(Path file, int maxEdge) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, false);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Keep at least twice the target resolution so the final resize still has detail to average
+                int subsampling = Math.max(1, longest / (maxEdge * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                int orientation;
+                try {
+                    orientation = orientation(reader.getImageMetadata(0));
+                } catch (IOException | RuntimeException e) {
+                    // Unreadable metadata: render the pixels as stored
+                    orientation = 1;
+                }
+                return orient(image, orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * EXIF Orientation (1-8) from the APP1 segment of JPEG metadata; 1 (upright) if there is none
+     */
+    static int orientation(IIOMetadata metadata) {
+        if (metadata == null || !JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return 1;
+        }
+        NodeList markers = ((IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT)).getElementsByTagName("unknown");
+        for (int i = 0; i < markers.getLength(); i++) {
+            IIOMetadataNode marker = (IIOMetadataNode) markers.item(i);
+            if ("225".equals(marker.getAttribute("MarkerTag")) && marker.getUserObject() instanceof byte[]) {
+                int orientation = exifOrientation((byte[]) marker.getUserObject());
+                if (orientation != 0) {
+                    return orientation;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Orientation tag from IFD0 of an APP1 Exif payload, or 0 if it isn't one or has no valid tag
+     */
+    static int exifOrientation(byte[] app1) {
+        if (app1.length < 14 || app1[0] != 'E' || app1[1] != 'x' || app1[2] != 'i' || app1[3] != 'f'
+                || app1[4] != 0 || app1[5] != 0) {
+            return 0;
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(app1, 6, app1.length - 6).slice();
+        if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+            return 0;
+        }
+        if (tiff.getShort(2) != 42) {
+            return 0;
+        }
+        long ifd = tiff.getInt(4) & 0xffffffffL;
+        if (ifd + 2 > tiff.limit()) {
+            return 0;
+        }
+        int entries = tiff.getShort((int) ifd) & 0xffff;
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                return 0;
+            }
+            // Tag 0x0112 of type SHORT, its value packed into the entry
+            if ((tiff.getShort(entry) & 0xffff) == 0x0112 && tiff.getShort(entry + 2) == 3) {
+                int orientation = tiff.getShort(entry + 8) & 0xffff;
+                return orientation >= 1 && orientation <= 8 ? orientation : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Rotate and/or mirror the decoded pixels so they display the way the EXIF orientation says
+     */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform;
+        switch (orientation) {
+            case 2:
+                transform = new AffineTransform(-1, 0, 0, 1, w, 0);
+                break;
+            case 3:
+                transform = new AffineTransform(-1, 0, 0, -1, w, h);
+                break;
+            case 4:
+                transform = new AffineTransform(1, 0, 0, -1, 0, h);
+                break;
+            case 5:
+                transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+                break;
+            case 6:
+                transform = new AffineTransform(0, 1, -1, 0, h, 0);
+                break;
+            case 7:
+                transform = new AffineTransform(0, -1, -1, 0, h, w);
+                break;
+            default:
+                transform = new AffineTransform(0, -1, 1, 0, 0, w);
+                break;
+        }
+        // Orientations 5-8 swap the sides
+        boolean swap = orientation >= 5;
+        BufferedImage upright = new BufferedImage(swap ? h : w, swap ? w : h,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = upright.createGraphics();
+        try {
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return upright;
+    }
+
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private Path variantPath(String fileName, ImageVariant variant) {
+        String directory = variantDirectory(variant);
+        // Look where the file is; new renders go into the sharded layout
+        Path existing = mediaPathResolver.resolve(directory, fileName);
+        return Files.exists(existing) ? existing : mediaPathResolver.writePath(directory, fileName);
+    }
+
+    static String variantDirectory(ImageVariant variant) {
+        return "images/" + VARIANT_DIRECTORY + "/" + variant.getKey();
+    }
+
+    /**
+     * Type of a rendered variant: PNG for PNG originals, JPEG otherwise
+     */
+    public static String variantContentType(String contentType) {
+        return PNG.equals(contentType) ? PNG : JPEG;
+    }
+
+    private static boolean isResizable(String contentType) {
+        // GIFs may be animated and ImageIO would keep only the first frame
+        return JPEG.equals(contentType) || PNG.equals(contentType);
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,684 @@
+package com.gym.auth.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind buffer for like/unlike toggles.
+ *
+ * Toggles are coalesced per (post, user) in memory, striped by post ID, and
+ * flushed to post_likes in JDBC batches on a timer or once max-pending keys
+ * accumulate. Every toggle is appended to a journal segment before it is
+ * acknowledged; segments are deleted only after the flush that covers them
+ * commits, and replayed on startup otherwise. Replaying is safe because each
+ * record is a desired end state, not a delta.
+ *
+ * An acknowledged toggle survives a process crash as soon as it is written. It
+ * survives a power loss or kernel crash once the journal is forced to disk, which
+ * happens every journal-sync-interval-ms and before a segment is sealed for a
+ * flush. Up to that interval of toggles can therefore be lost with the machine.
+ * An interval of 0 forces every append before it is acknowledged, at the cost of
+ * one disk sync per like.
+ *
+ * A batch that fails for a reason other than the database being unavailable is
+ * retried post by post and then key by key, and a toggle that still fails on its
+ * own while others go through is dropped with an error log, so one bad row can't
+ * hold up every like behind it. If the buffer still fills up to max-buffered keys, new keys are refused with
+ * {@link BufferFullException} until a flush gets through.
+ */
+@Component
+@ConditionalOnProperty(name = "app.likes.write-behind.enabled", havingValue = "true")
+public class LikeWriteBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeWriteBuffer.class);
+
+    private static final byte OP_UNLIKE = 0;
+    private static final byte OP_LIKE = 1;
+    private static final int RECORD_SIZE = 1 + 8 + 8;
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    // Same lock the direct like path takes; rows come back, and are locked, in id order
+    private static final String LOCK_POSTS_SQL = "SELECT id FROM posts WHERE id IN (%s) ORDER BY id FOR UPDATE";
+    private static final String EXISTING_LIKES_SQL =
+            "SELECT post_id, user_id FROM post_likes WHERE post_id IN (%s) AND user_id IN (%s)";
+    private static final String INSERT_SQL =
+            "INSERT INTO post_likes (post_id, user_id, created_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+    private static final String DELETE_SQL =
+            "DELETE FROM post_likes WHERE post_id = ? AND user_id = ?";
+    private static final String ADJUST_COUNT_SQL =
+            "UPDATE posts SET likes_count = likes_count + ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.likes.write-behind.stripes:16}")
+    private int stripeCount;
+
+    @Value("${app.likes.write-behind.max-pending:5000}")
+    private int maxPending;
+
+    // Hard cap on buffered keys; past it new toggles are refused rather than queued
+    @Value("${app.likes.write-behind.max-buffered:50000}")
+    private int maxBuffered;
+
+    @Value("${app.likes.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.likes.write-behind.journal-dir:./data/like-journal}")
+    private String journalDir;
+
+    // Longest an acknowledged toggle stays only in the OS page cache; 0 forces every append
+    @Value("${app.likes.write-behind.journal-sync-interval-ms:100}")
+    private long journalSyncIntervalMs;
+
+    private Stripe[] stripes;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong droppedToggles = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Object journalLock = new Object();
+    private ExecutorService flushExecutor;
+    private ScheduledExecutorService journalSyncExecutor;
+    private Path journalPath;
+    private FileChannel journal;
+    private long journalSegment;
+    // Appended to since the last force; guarded by journalLock
+    private boolean journalDirty;
+
+    /**
+     * Too many toggles are waiting for the database; the client should try again shortly
+     */
+    public static class BufferFullException extends RuntimeException {
+        public BufferFullException(String message) {
+            super(message);
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        journalPath = Paths.get(journalDir).toAbsolutePath();
+        Files.createDirectories(journalPath);
+
+        // Anything still journaled was never confirmed flushed; the first scheduled flush picks it up
+        long lastSegment = replayJournal();
+        openSegment(lastSegment + 1);
+
+        flushExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "like-buffer-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (journalSyncIntervalMs > 0) {
+            journalSyncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "like-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            journalSyncExecutor.scheduleWithFixedDelay(this::syncJournal,
+                    journalSyncIntervalMs, journalSyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Like write-behind buffer enabled with {} stripes, journal at {}", stripeCount, journalPath);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flushExecutor.shutdown();
+        if (journalSyncExecutor != null) {
+            journalSyncExecutor.shutdown();
+        }
+        flush();
+        synchronized (journalLock) {
+            journal.force(false);
+            journal.close();
+        }
+    }
+
+    public void like(Long postId, Long userId) {
+        record(postId, userId, true);
+    }
+
+    public void unlike(Long postId, Long userId) {
+        record(postId, userId, false);
+    }
+
+    /**
+     * Buffered state for the pair, or null when the database is authoritative
+     */
+    public Boolean getBufferedState(Long postId, Long userId) {
+        LikeKey key = new LikeKey(postId, userId);
+        Stripe stripe = stripeFor(postId);
+
+        stripe.lock.lock();
+        try {
+            Boolean state = stripe.pending.get(key);
+            return state != null ? state : stripe.inflight.get(key);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Apply buffered toggles for one user on top of the liked set read from the database
+     */
+    public Set<Long> overlay(Collection<Long> postIds, Long userId, Set<Long> likedInDatabase) {
+        Set<Long> liked = new HashSet<>(likedInDatabase);
+
+        for (Long postId : postIds) {
+            Boolean state = getBufferedState(postId, userId);
+            if (Boolean.TRUE.equals(state)) {
+                liked.add(postId);
+            } else if (Boolean.FALSE.equals(state)) {
+                liked.remove(postId);
+            }
+        }
+        return liked;
+    }
+
+    @Scheduled(fixedDelayString = "${app.likes.write-behind.flush-interval-ms:500}")
+    public void flush() {
+        // A flush already in progress will be followed by the next tick
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            doFlush();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void record(Long postId, Long userId, boolean liked) {
+        LikeKey key = new LikeKey(postId, userId);
+        Stripe stripe = stripeFor(postId);
+        boolean newKey;
+
+        stripe.lock.lock();
+        try {
+            // Toggling a key that is already buffered doesn't add to the backlog
+            if (pendingCount.get() >= maxBuffered && !stripe.pending.containsKey(key)) {
+                throw new BufferFullException("Too many likes waiting to be saved, try again shortly");
+            }
+            appendToJournal(liked ? OP_LIKE : OP_UNLIKE, postId, userId);
+            newKey = stripe.pending.put(key, liked) == null;
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (newKey && pendingCount.incrementAndGet() >= maxPending) {
+            requestFlush();
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    private void doFlush() {
+        Map<LikeKey, Boolean> batch = new HashMap<>();
+        long sealedSegment;
+
+        // Holding every stripe lock makes the swap and the journal rotation atomic with respect to
+        // writers: every record in the sealed segments is covered by this batch
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                if (!stripe.pending.isEmpty()) {
+                    stripe.inflight = stripe.pending;
+                    stripe.pending = new HashMap<>();
+                    batch.putAll(stripe.inflight);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            pendingCount.set(0);
+            sealedSegment = rotateJournal();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].lock.unlock();
+            }
+        }
+
+        try {
+            applyInTransaction(batch);
+            logger.debug("Flushed {} buffered like toggles", batch.size());
+        } catch (RuntimeException e) {
+            if (isRetryable(e)) {
+                logger.error("Failed to flush {} buffered like toggles, will retry: {}", batch.size(), e.getMessage());
+                restoreInflight();
+                return;
+            }
+            logger.warn("Failed to flush {} buffered like toggles, retrying post by post: {}", batch.size(), e.getMessage());
+            if (!applyIsolated(batch)) {
+                restoreInflight();
+                return;
+            }
+        }
+        deleteSegmentsUpTo(sealedSegment);
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.inflight = Collections.emptyMap();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private void applyInTransaction(Map<LikeKey, Boolean> batch) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> apply(batch));
+    }
+
+    /**
+     * Apply a batch that failed as a whole one post at a time, and a failing post one key at a
+     * time. Keys that still fail on their own are dropped and logged, but only if something else
+     * went through, so a schema problem or an outage can't empty the buffer. Returns false,
+     * leaving the batch to be retried, when nothing went through or the database looks
+     * unavailable; keys applied by then are end states, so applying them again changes nothing.
+     */
+    private boolean applyIsolated(Map<LikeKey, Boolean> batch) {
+        Map<Long, Map<LikeKey, Boolean>> byPost = new TreeMap<>();
+        for (Map.Entry<LikeKey, Boolean> entry : batch.entrySet()) {
+            byPost.computeIfAbsent(entry.getKey().postId, id -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+
+        boolean anyApplied = false;
+        Map<LikeKey, String> failed = new LinkedHashMap<>();
+        for (Map<LikeKey, Boolean> toggles : byPost.values()) {
+            try {
+                applyInTransaction(toggles);
+                anyApplied = true;
+                continue;
+            } catch (RuntimeException e) {
+                if (isRetryable(e)) {
+                    return false;
+                }
+            }
+            for (Map.Entry<LikeKey, Boolean> entry : toggles.entrySet()) {
+                try {
+                    applyInTransaction(Collections.singletonMap(entry.getKey(), entry.getValue()));
+                    anyApplied = true;
+                } catch (RuntimeException e) {
+                    if (isRetryable(e)) {
+                        return false;
+                    }
+                    failed.put(entry.getKey(), e.getMessage());
+                }
+            }
+        }
+        if (!anyApplied) {
+            logger.error("No buffered like toggle could be flushed on its own, will retry all {}", batch.size());
+            return false;
+        }
+
+        for (Map.Entry<LikeKey, String> entry : failed.entrySet()) {
+            LikeKey key = entry.getKey();
+            logger.error("Dropped buffered {} of post {} by user {}: {}", batch.get(key) ? "like" : "unlike",
+                    key.postId, key.userId, entry.getValue());
+        }
+        droppedToggles.addAndGet(failed.size());
+        logger.info("Flushed {} buffered like toggles one post at a time, {} dropped",
+                batch.size() - failed.size(), failed.size());
+        return true;
+    }
+
+    /**
+     * Failures that say nothing about the toggles themselves: the database is down, busy or
+     * timed out, so the same batch may well go through later
+     */
+    private static boolean isRetryable(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof TransactionException;
+    }
+
+    /**
+     * Toggles dropped since startup because they failed on their own
+     */
+    public long getDroppedToggles() {
+        return droppedToggles.get();
+    }
+
+    /**
+     * Lock the posts first, in id order, then read which likes exist and write only real
+     * changes. Inserts are plain and deletes hit existing rows, so no range of the post_likes
+     * index is locked and concurrent flushes and direct likes queue on the post rows instead
+     * of deadlocking. Toggles for posts that no longer exist are dropped.
+     */
+    private void apply(Map<LikeKey, Boolean> batch) {
+        List<Long> postIds = batch.keySet().stream().map(key -> key.postId)
+                .distinct().sorted().collect(Collectors.toList());
+        Set<Long> livePosts = new HashSet<>();
+        for (int i = 0; i < postIds.size(); i += batchSize) {
+            List<Long> chunk = postIds.subList(i, Math.min(postIds.size(), i + batchSize));
+            livePosts.addAll(jdbcTemplate.queryForList(String.format(LOCK_POSTS_SQL, placeholders(chunk.size())),
+                    Long.class, chunk.toArray()));
+        }
+
+        List<LikeKey> keys = new ArrayList<>();
+        for (LikeKey key : batch.keySet()) {
+            if (livePosts.contains(key.postId)) {
+                keys.add(key);
+            }
+        }
+        Set<LikeKey> existing = existingLikes(keys);
+
+        List<LikeKey> likes = new ArrayList<>();
+        List<LikeKey> unlikes = new ArrayList<>();
+        Map<Long, Long> deltas = new HashMap<>();
+        for (LikeKey key : keys) {
+            boolean liked = batch.get(key);
+            if (liked && !existing.contains(key)) {
+                likes.add(key);
+                deltas.merge(key.postId, 1L, Long::sum);
+            } else if (!liked && existing.contains(key)) {
+                unlikes.add(key);
+                deltas.merge(key.postId, -1L, Long::sum);
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, likes, batchSize, (ps, key) -> {
+            ps.setLong(1, key.postId);
+            ps.setLong(2, key.userId);
+        });
+        jdbcTemplate.batchUpdate(DELETE_SQL, unlikes, batchSize, (ps, key) -> {
+            ps.setLong(1, key.postId);
+            ps.setLong(2, key.userId);
+        });
+        jdbcTemplate.batchUpdate(ADJUST_COUNT_SQL, new ArrayList<>(deltas.entrySet()), batchSize, (ps, entry) -> {
+            ps.setLong(1, entry.getValue());
+            ps.setLong(2, entry.getKey());
+        });
+    }
+
+    /**
+     * Which of the keys are already in post_likes. A plain read: the post locks already keep
+     * other writers out of these rows.
+     */
+    private Set<LikeKey> existingLikes(List<LikeKey> keys) {
+        Set<LikeKey> existing = new HashSet<>();
+        for (int i = 0; i < keys.size(); i += batchSize) {
+            List<LikeKey> chunk = keys.subList(i, Math.min(keys.size(), i + batchSize));
+            Set<Long> postIds = new TreeSet<>();
+            Set<Long> userIds = new TreeSet<>();
+            for (LikeKey key : chunk) {
+                postIds.add(key.postId);
+                userIds.add(key.userId);
+            }
+            List<Object> args = new ArrayList<>(postIds);
+            args.addAll(userIds);
+            Set<LikeKey> wanted = new HashSet<>(chunk);
+            jdbcTemplate.query(String.format(EXISTING_LIKES_SQL, placeholders(postIds.size()), placeholders(userIds.size())),
+                    rs -> {
+                        LikeKey key = new LikeKey(rs.getLong(1), rs.getLong(2));
+                        // The IN lists match a cross product; keep only the pairs asked about
+                        if (wanted.contains(key)) {
+                            existing.add(key);
+                        }
+                    }, args.toArray());
+        }
+        return existing;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private void restoreInflight() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                // Newer toggles recorded while flushing take precedence
+                for (Map.Entry<LikeKey, Boolean> entry : stripe.inflight.entrySet()) {
+                    if (stripe.pending.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                        pendingCount.incrementAndGet();
+                    }
+                }
+                stripe.inflight = Collections.emptyMap();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private Stripe stripeFor(Long postId) {
+        return stripes[(int) Math.floorMod(postId, (long) stripes.length)];
+    }
+
+    // Journal
+
+    private void appendToJournal(byte op, long postId, long userId) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(op).putLong(postId).putLong(userId).flip();
+
+        synchronized (journalLock) {
+            try {
+                while (record.hasRemaining()) {
+                    journal.write(record);
+                }
+                if (journalSyncIntervalMs <= 0) {
+                    journal.force(false);
+                } else {
+                    journalDirty = true;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to journal like toggle", e);
+            }
+        }
+    }
+
+    /**
+     * Force what was appended since the last sync to disk. Appends carry on meanwhile.
+     */
+    void syncJournal() {
+        FileChannel channel;
+        synchronized (journalLock) {
+            if (!journalDirty) {
+                return;
+            }
+            journalDirty = false;
+            channel = journal;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Sealed by a flush meanwhile, which forced it before closing
+        } catch (IOException e) {
+            logger.error("Failed to sync like journal, will retry: {}", e.getMessage());
+            synchronized (journalLock) {
+                journalDirty = true;
+            }
+        }
+    }
+
+    private long rotateJournal() {
+        synchronized (journalLock) {
+            long sealed = journalSegment;
+            try {
+                // The sealed segment is all that is left of the batch until the flush commits
+                journal.force(false);
+                journalDirty = false;
+                journal.close();
+                openSegment(sealed + 1);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to rotate like journal", e);
+            }
+            return sealed;
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        journalSegment = segment;
+        journal = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDirectory();
+    }
+
+    /**
+     * Make the new segment's directory entry durable, so a forced segment can't vanish with
+     * the crash. Not every platform can open a directory; there the file system has to do.
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync like journal directory: {}", e.getMessage());
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return journalPath.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    private void deleteSegmentsUpTo(long segment) {
+        for (long existing : listSegments()) {
+            if (existing <= segment) {
+                try {
+                    Files.deleteIfExists(segmentPath(existing));
+                } catch (IOException e) {
+                    logger.warn("Could not delete flushed like journal segment {}: {}", existing, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(journalPath, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.add(Long.parseLong(number));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in like journal directory: {}", name);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to list like journal segments", e);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private long replayJournal() throws IOException {
+        long lastSegment = 0;
+        int replayed = 0;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+        for (long segment : listSegments()) {
+            lastSegment = segment;
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                while (true) {
+                    record.clear();
+                    while (record.hasRemaining() && channel.read(record) >= 0) {
+                        // keep reading until the record is complete or the file ends
+                    }
+                    if (record.hasRemaining()) {
+                        // End of segment, or a record torn by the crash
+                        break;
+                    }
+                    record.flip();
+                    byte op = record.get();
+                    long postId = record.getLong();
+                    long userId = record.getLong();
+
+                    Stripe stripe = stripeFor(postId);
+                    if (stripe.pending.put(new LikeKey(postId, userId), op == OP_LIKE) == null) {
+                        pendingCount.incrementAndGet();
+                    }
+                    replayed++;
+                }
+            }
+        }
+
+        if (replayed > 0) {
+            logger.info("Replayed {} unflushed like toggles from journal", replayed);
+        }
+        return lastSegment;
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Map<LikeKey, Boolean> pending = new HashMap<>();
+        private Map<LikeKey, Boolean> inflight = Collections.emptyMap();
+    }
+
+    private static final class LikeKey {
+        private final long postId;
+        private final long userId;
+
+        LikeKey(long postId, long userId) {
+            this.postId = postId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LikeKey)) {
+                return false;
+            }
+            LikeKey other = (LikeKey) o;
+            return postId == other.postId && userId == other.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(postId) * 31 + Long.hashCode(userId);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.gym.auth.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * The upload directory, in whatever layout {@link MediaPathResolver} uses. New uploads are
+ * written here and every response is served from here.
+ */
+@Component
+public class LocalBlobStore implements BlobStore {
+
+    public static final String NAME = "local";
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Where the blob is, or would be written, on local disk
+     */
+    public Path path(String key) {
+        return mediaPathResolver.resolve(BlobStore.directoryOf(key), BlobStore.fileNameOf(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(path(key));
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = mediaPathResolver.writePath(BlobStore.directoryOf(key), BlobStore.fileNameOf(key));
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(".put-" + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(source, temp);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        Files.copy(path(key), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return mediaPathResolver.delete(BlobStore.directoryOf(key), BlobStore.fileNameOf(key));
+    }
+
+    @Override
+    public void list(String directory, BlobVisitor visitor) throws IOException {
+        BlobStore.listFiles(mediaPathResolver.root().resolve(directory), directory, "", visitor);
+    }
+}
@@ -0,0 +1,75 @@
+package com.gym.auth.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes media files in the background once the transaction that dropped their rows has
+ * committed. A rollback leaves the files alone, and request threads never wait on the disk.
+ * Files whose deletion is lost to a crash are picked up by {@link OrphanMediaReconciler}.
+ */
+@Component
+public class MediaDeletionQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaDeletionQueue.class);
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    private ExecutorService deleteExecutor;
+
+    @PostConstruct
+    public void init() {
+        deleteExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "media-delete");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Give queued deletions a moment; whatever is left becomes an orphan for the reconciler
+        deleteExecutor.shutdown();
+        if (!deleteExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            logger.warn("Media deletions still queued at shutdown; the orphan reconciler will remove them");
+        }
+    }
+
+    /**
+     * Delete a stored file, given as directory/name, after the current transaction commits,
+     * or straight away (still off the calling thread) if there is no transaction
+     */
+    public void deleteAfterCommit(String filePath) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(filePath);
+                }
+            });
+        } else {
+            enqueue(filePath);
+        }
+    }
+
+    private void enqueue(String filePath) {
+        deleteExecutor.execute(() -> {
+            try {
+                fileStorageService.deleteFile(filePath);
+            } catch (RuntimeException e) {
+                logger.warn("Could not delete {}: {}", filePath, e.getMessage());
+            }
+        });
+    }
+}
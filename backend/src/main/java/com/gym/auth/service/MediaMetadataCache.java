@@ -0,0 +1,145 @@
+package com.gym.auth.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, TTL-based cache of the size and modification time of served media files.
+ *
+ * Stored files never change once written, so their validators don't either: conditional
+ * requests can be answered with 304 straight from here, without touching the file. Entries
+ * are dropped when {@link MediaPathResolver} deletes a file; the TTL only bounds staleness
+ * for changes made outside the application.
+ */
+@Component
+public class MediaMetadataCache {
+
+    @Value("${app.media.metadata-cache.max-size:50000}")
+    private int maxSize;
+
+    @Value("${app.media.metadata-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private final Object lock = new Object();
+
+    // Access-ordered so the eldest entry is the least recently used one
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<Path, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * Metadata of a regular file, or null if there is no such file. Misses are not cached,
+     * so a file that appears later is picked up on the next request.
+     */
+    public FileMetadata get(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt >= now) {
+                    return entry.metadata;
+                }
+                entries.remove(key);
+            }
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        FileMetadata metadata = new FileMetadata(key, attributes.size(), attributes.lastModifiedTime().toMillis());
+        synchronized (lock) {
+            entries.put(key, new Entry(metadata, now + ttlSeconds * 1000));
+        }
+        return metadata;
+    }
+
+    public void invalidate(Path file) {
+        Path key = file.toAbsolutePath().normalize();
+        synchronized (lock) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (lock) {
+            entries.clear();
+        }
+    }
+
+    public static class FileMetadata {
+        private Path path;
+        private final Supplier<Path> pathSupplier;
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+
+        FileMetadata(Path path, long size, long lastModified) {
+            this.path = path;
+            this.pathSupplier = null;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        }
+
+        /**
+         * Metadata known without looking at the file; the path is only resolved once bytes are sent
+         */
+        public FileMetadata(Supplier<Path> pathSupplier, long size, long lastModified, String etag) {
+            this.pathSupplier = pathSupplier;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        public Path getPath() {
+            if (path == null) {
+                path = pathSupplier.get().toAbsolutePath().normalize();
+            }
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Strong validator; uploads are never rewritten in place, so size and mtime identify the bytes
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static class Entry {
+        private final FileMetadata metadata;
+        private final long expiresAt;
+
+        Entry(FileMetadata metadata, long expiresAt) {
+            this.metadata = metadata;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.dto.MediaRecord;
+import com.gym.auth.repository.PostImageRepository;
+import com.gym.auth.repository.PostVideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the type, size, checksum and upload time recorded for each stored post
+ * image and video, so media responses and 404s are decided without touching the filesystem.
+ *
+ * Entries are loaded from post_images / post_videos on first request. Recorded metadata
+ * never changes, so hits are kept until evicted or until {@link MediaPathResolver} deletes
+ * the file. Names with no row are remembered only briefly, since a post may be committing,
+ * and in a separate small map: the file endpoints are public, so a stream of made-up names
+ * must not push real metadata out.
+ */
+@Component
+public class MediaMetadataIndex {
+
+    private static final String VIDEO_DIRECTORY = "videos";
+
+    @Autowired
+    private PostImageRepository postImageRepository;
+
+    @Autowired
+    private PostVideoRepository postVideoRepository;
+
+    @Value("${app.media.metadata-index.max-size:100000}")
+    private int maxSize;
+
+    @Value("${app.media.metadata-index.negative-max-size:10000}")
+    private int negativeMaxSize;
+
+    @Value("${app.media.metadata-index.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    private final Object lock = new Object();
+
+    // Access-ordered so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, MediaRecord> entries = new LinkedHashMap<String, MediaRecord>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MediaRecord> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    // Names with no row, to when they are looked up again; insertion-ordered, oldest evicted first
+    private final LinkedHashMap<String, Long> missing = new LinkedHashMap<String, Long>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > negativeMaxSize;
+        }
+    };
+
+    /**
+     * Recorded metadata of a stored file, or null if no post refers to it
+     */
+    public MediaRecord get(String directory, String fileName) {
+        String key = directory + "/" + fileName;
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            MediaRecord record = entries.get(key);
+            if (record != null) {
+                return record;
+            }
+            Long expiresAt = missing.get(key);
+            if (expiresAt != null) {
+                if (expiresAt >= now) {
+                    return null;
+                }
+                missing.remove(key);
+            }
+        }
+
+        List<MediaRecord> records = VIDEO_DIRECTORY.equals(directory)
+                ? postVideoRepository.findMediaRecords(fileName, PageRequest.of(0, 1))
+                : postImageRepository.findMediaRecords(fileName, PageRequest.of(0, 1));
+        MediaRecord record = records.isEmpty() ? null : records.get(0);
+
+        synchronized (lock) {
+            if (record != null) {
+                entries.put(key, record);
+            } else {
+                missing.put(key, now + negativeTtlSeconds * 1000);
+            }
+        }
+        return record;
+    }
+
+    public void invalidate(String directory, String fileName) {
+        String key = directory + "/" + fileName;
+        synchronized (lock) {
+            entries.remove(key);
+            missing.remove(key);
+        }
+    }
+}
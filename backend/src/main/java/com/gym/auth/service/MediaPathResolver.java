@@ -0,0 +1,135 @@
+package com.gym.auth.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Maps a stored file name to where it lives on disk.
+ *
+ * Files are spread over a two-level, hash-prefixed tree (images/ab/cd/name.jpg) so no single
+ * directory grows to millions of entries. Names and URLs don't change; only the physical
+ * location does. Files written before sharding stay readable from the flat directory until
+ * {@link UploadReshardService} has moved them.
+ */
+@Component
+public class MediaPathResolver {
+
+    @Autowired
+    private MediaMetadataCache mediaMetadataCache;
+
+    @Autowired
+    private HotMediaCache hotMediaCache;
+
+    @Autowired
+    private MediaMetadataIndex mediaMetadataIndex;
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    // sharded (default) or flat
+    @Value("${file.storage.layout:sharded}")
+    private String layout;
+
+    public boolean isSharded() {
+        return !"flat".equals(layout);
+    }
+
+    public Path root() {
+        return Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Where a new file with this name should be written
+     */
+    public Path writePath(String directory, String fileName) {
+        return isSharded() ? shardedPath(directory, fileName) : flatPath(directory, fileName);
+    }
+
+    /**
+     * Where an existing file is, checking the sharded location on both sides of the flat one
+     * so a file moved by the resharder mid-lookup is still found. Returns the preferred location
+     * if the file is in neither place.
+     */
+    public Path resolve(String directory, String fileName) {
+        Path sharded = shardedPath(directory, fileName);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = flatPath(directory, fileName);
+        if (Files.exists(flat)) {
+            return flat;
+        }
+        // The resharder may have moved it between the two lookups
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        return isSharded() ? sharded : flat;
+    }
+
+    public boolean exists(String directory, String fileName) {
+        return Files.exists(resolve(directory, fileName));
+    }
+
+    /**
+     * Remove the file from both layouts. The flat copy goes first: if the resharder moves it
+     * in between, the second delete still catches it at the sharded path.
+     */
+    public boolean delete(String directory, String fileName) throws IOException {
+        Path flat = flatPath(directory, fileName);
+        Path sharded = shardedPath(directory, fileName);
+        boolean deleted = Files.deleteIfExists(flat);
+        deleted = Files.deleteIfExists(sharded) || deleted;
+        mediaMetadataCache.invalidate(flat);
+        mediaMetadataCache.invalidate(sharded);
+        hotMediaCache.invalidate(flat);
+        hotMediaCache.invalidate(sharded);
+        mediaMetadataIndex.invalidate(directory, fileName);
+        return deleted;
+    }
+
+    public Path shardedPath(String directory, String fileName) {
+        String shard = shardOf(fileName);
+        return base(directory).resolve(shard.substring(0, 2)).resolve(shard.substring(2, 4)).resolve(checkName(fileName));
+    }
+
+    public Path flatPath(String directory, String fileName) {
+        return base(directory).resolve(checkName(fileName));
+    }
+
+    /**
+     * A name is servable only if it is a single path segment, so it can never leave its directory
+     */
+    public static boolean isValidName(String fileName) {
+        return fileName != null && !fileName.isEmpty() && !fileName.equals(".") && !fileName.equals("..")
+                && fileName.indexOf('/') < 0 && fileName.indexOf('\\') < 0 && fileName.indexOf('\0') < 0;
+    }
+
+    private Path base(String directory) {
+        return root().resolve(directory);
+    }
+
+    private static String checkName(String fileName) {
+        if (!isValidName(fileName)) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+        return fileName;
+    }
+
+    static String shardOf(String fileName) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(fileName.getBytes(StandardCharsets.UTF_8));
+            return String.format("%02x%02x", hash[0] & 0xff, hash[1] & 0xff);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.gym.auth.service;
+
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Serves stored media with HTTP range support (RFC 7233): single and multiple
+ * byte ranges, If-Range, 206/416 responses and HEAD, reading only the requested
+ * bytes from the file. Responses carry immutable cache headers, and conditional
+ * requests get a 304 decided from {@link MediaMetadataCache}, or from the metadata recorded
+ * at upload, without opening the file. Full files and single ranges go out through Tomcat
+ * sendfile when the connector supports it; everything else is copied through a small pool
+ * of direct buffers.
+ */
+@Service
+public class MediaStreamingService {
+
+    private static final Logger logger = Logger.getLogger(MediaStreamingService.class.getName());
+
+    // More ranges than this (after coalescing) is treated as abusive and answered with the full file
+    private static final int MAX_RANGES = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Request attributes of Tomcat's sendfile contract
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private MediaMetadataCache mediaMetadataCache;
+
+    @Autowired
+    private HotMediaCache hotMediaCache;
+
+    @Value("${app.media.cache-control:public, max-age=31536000, immutable}")
+    private String cacheControl;
+
+    @Value("${app.media.sendfile.enabled:true}")
+    private boolean sendfileEnabled;
+
+    private final BlockingQueue<ByteBuffer> bufferPool;
+
+    public MediaStreamingService(@Value("${app.media.buffer-pool-size:32}") int bufferPoolSize) {
+        this.bufferPool = new ArrayBlockingQueue<>(Math.max(1, bufferPoolSize));
+    }
+
+    public void serve(HttpServletRequest request, HttpServletResponse response,
+                      Path file, String contentType) throws IOException {
+        MediaMetadataCache.FileMetadata metadata = mediaMetadataCache.get(file);
+        if (metadata == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        serve(request, response, metadata, file.getFileName().toString(), contentType);
+    }
+
+    /**
+     * Serve a file whose metadata is already known. Headers, 304s and HEAD are answered from
+     * the metadata alone; the file is only opened to send its bytes.
+     */
+    public void serve(HttpServletRequest request, HttpServletResponse response,
+                      MediaMetadataCache.FileMetadata metadata, String fileName, String contentType) throws IOException {
+        long length = metadata.getSize();
+        long lastModified = metadata.getLastModified();
+        String etag = metadata.getEtag();
+        boolean headOnly = "HEAD".equals(request.getMethod());
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        // Stored names are never reused for different bytes, so clients and proxies may keep them indefinitely
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "inline; filename=\"" + fileName + "\"");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        List<long[]> ranges = null;
+        if (rangeHeader != null && ifRangeMatches(request, etag, lastModified)) {
+            ranges = parseRanges(rangeHeader, length);
+        }
+
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            if (!headOnly) {
+                sendFile(request, response, metadata, 0, length);
+            }
+            return;
+        }
+
+        if (ranges.isEmpty()) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+        if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, length));
+            response.setContentLengthLong(range[1] - range[0] + 1);
+            if (!headOnly) {
+                sendFile(request, response, metadata, range[0], range[1] - range[0] + 1);
+            }
+            return;
+        }
+
+        // multipart/byteranges interleaves headers with file data, so it always goes through the buffer pool.
+        // The part headers are built up front so Content-Length is exact
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (long[] range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            total += header.length + (range[1] - range[0] + 1);
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        total += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(total);
+        if (headOnly) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        try (FileChannel channel = FileChannel.open(metadata.getPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                out.write(partHeaders.get(i));
+                copy(channel, out, range[0], range[1] - range[0] + 1);
+            }
+        }
+        out.write(closing);
+    }
+
+    /**
+     * Parses a Range header against the file length.
+     *
+     * @return null if the header should be ignored (not a bytes range, malformed, or too many ranges),
+     *         an empty list if no range is satisfiable, otherwise the sorted, coalesced ranges
+     *         as inclusive [first, last] pairs
+     */
+    static List<long[]> parseRanges(String header, long length) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+
+        List<long[]> ranges = new ArrayList<>();
+        for (String spec : header.substring("bytes=".length()).split(",")) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // Suffix range: the last N bytes
+                    long suffix = parsePosition(spec.substring(1));
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffix);
+                    last = length - 1;
+                } else {
+                    first = parsePosition(spec.substring(0, dash));
+                    if (dash == spec.length() - 1) {
+                        last = length - 1;
+                    } else {
+                        last = parsePosition(spec.substring(dash + 1));
+                        if (last < first) {
+                            return null;
+                        }
+                        last = Math.min(last, length - 1);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first < length) {
+                ranges.add(new long[]{first, last});
+            }
+        }
+
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && range[0] <= previous[1] + 1) {
+                previous[1] = Math.max(previous[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+
+    /**
+     * A byte position: digits only, so signs and blanks make the whole header invalid
+     */
+    private static long parsePosition(String digits) {
+        if (digits.isEmpty()) {
+            throw new NumberFormatException("Empty byte position");
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+                throw new NumberFormatException("Not a byte position: " + digits);
+            }
+        }
+        return Long.parseLong(digits);
+    }
+
+    /**
+     * Evaluates If-None-Match, or If-Modified-Since when there is no If-None-Match (RFC 7232 section 6).
+     * If-None-Match uses the weak comparison, so W/ variants of our tag still match.
+     */
+    static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have second precision
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires a strong comparison, so weak validators on either side never match
+            return !ifRange.startsWith("W/") && !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+        try {
+            // HTTP dates have second precision
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return "bytes " + range[0] + "-" + range[1] + "/" + length;
+    }
+
+    /**
+     * Sends one contiguous slice of the file. Hot files come from {@link HotMediaCache}; otherwise,
+     * on Tomcat with sendfile available, the connector moves the bytes itself with
+     * FileChannel.transferTo, so they never enter the JVM heap.
+     */
+    private void sendFile(HttpServletRequest request, HttpServletResponse response,
+                          MediaMetadataCache.FileMetadata metadata, long position, long count) throws IOException {
+        ByteBuffer cached = hotMediaCache.get(metadata);
+        if (cached != null) {
+            cached.position((int) position).limit((int) (position + count));
+            write(response.getOutputStream(), cached);
+            return;
+        }
+        Path file = metadata.getPath();
+        if (sendfileEnabled && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toFile().getCanonicalPath());
+            request.setAttribute(SENDFILE_START_ATTR, position);
+            request.setAttribute(SENDFILE_END_ATTR, position + count);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            copy(channel, response.getOutputStream(), position, count);
+        }
+    }
+
+    private void copy(FileChannel channel, OutputStream out, long position, long count) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        try {
+            long end = position + count;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    // File shrank underneath us; the declared Content-Length can no longer be honoured
+                    logger.warning("Unexpected end of file while streaming at position " + position);
+                    throw new IOException("Unexpected end of file");
+                }
+                buffer.flip();
+                write(out, buffer);
+                position += read;
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private static void write(OutputStream out, ByteBuffer buffer) throws IOException {
+        if (out instanceof CoyoteOutputStream) {
+            // Tomcat copies straight from the direct buffer into its socket buffer
+            ((CoyoteOutputStream) out).write(buffer);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        // Extra buffers beyond the pool size are left to the GC
+        bufferPool.offer(buffer);
+    }
+}
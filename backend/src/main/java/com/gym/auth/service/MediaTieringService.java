@@ -0,0 +1,465 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.MediaPlacement;
+import com.gym.auth.repository.MediaPlacementRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Moves videos between the local disk and a cold {@link BlobStore} in the background.
+ *
+ * Every response is served from local disk. A video older than demote-after-days that
+ * nobody has requested for idle-days is copied to the cold store and marked cold; its local
+ * copy stays for a grace period, so requests already under way finish normally, and is then
+ * dropped. A request for a cold video without a local copy restores it from the cold store
+ * first. A cold video that keeps being requested is promoted back: it stays local and the
+ * cold copy is deleted.
+ *
+ * Requests are counted in memory and written to media_placements once per run. Moving,
+ * restoring and dropping one file are serialized on a per-path lock; serving a file that is
+ * already local never waits for it.
+ */
+@Service
+public class MediaTieringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaTieringService.class);
+
+    // Images are small and their variants are rendered from the original, so only videos are tiered
+    private static final String TIERED_DIRECTORY = "videos";
+    private static final int LOCK_STRIPES = 256;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    @Autowired
+    private LocalBlobStore localBlobStore;
+
+    @Autowired
+    private List<BlobStore> blobStores;
+
+    @Autowired
+    private MediaPlacementRepository mediaPlacementRepository;
+
+    @Value("${file.storage.tiering.enabled:true}")
+    private boolean enabled;
+
+    // Name of the BlobStore cold videos go to: compressed or s3
+    @Value("${file.storage.tiering.cold-store:compressed}")
+    private String coldStoreName;
+
+    @Value("${file.storage.tiering.demote-after-days:30}")
+    private int demoteAfterDays;
+
+    @Value("${file.storage.tiering.idle-days:14}")
+    private int idleDays;
+
+    // Requests, decayed by half each run, that bring a cold video back for good
+    @Value("${file.storage.tiering.promote-after-hits:20}")
+    private int promoteAfterHits;
+
+    @Value("${file.storage.tiering.local-grace-minutes:60}")
+    private long localGraceMinutes;
+
+    @Value("${file.storage.tiering.batch-size:50}")
+    private int batchSize;
+
+    @Value("${file.storage.tiering.max-moves-per-run:1000}")
+    private int maxMovesPerRun;
+
+    @Value("${file.storage.tiering.pause-ms:200}")
+    private long pauseMs;
+
+    private BlobStore coldStore;
+
+    private final ConcurrentHashMap<String, Access> pendingAccesses = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicLong demoted = new AtomicLong();
+    private final AtomicLong promoted = new AtomicLong();
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong localCopiesDropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public MediaTieringService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        coldStore = storeNamed(coldStoreName);
+        if (coldStore == null || coldStore == localBlobStore) {
+            logger.warn("Cold store '{}' is not available; media tiering is disabled", coldStoreName);
+            enabled = false;
+            return;
+        }
+        logger.info("Media tiering: videos idle for {} days after {} days move to the {} store",
+                idleDays, demoteAfterDays, coldStore.getName());
+    }
+
+    /**
+     * Note a request for a stored file; written to the database on the next run
+     */
+    public void recordAccess(String directory, String fileName) {
+        if (!TIERED_DIRECTORY.equals(directory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        pendingAccesses.compute(directory + "/" + fileName, (key, access) -> {
+            if (access == null) {
+                access = new Access();
+            }
+            access.hits++;
+            access.lastAccessedAt = now;
+            return access;
+        });
+    }
+
+    /**
+     * Local path of a stored file, restoring it from the cold store first if it was moved there
+     */
+    public Path localPath(String directory, String fileName) throws IOException {
+        Path path = mediaPathResolver.resolve(directory, fileName);
+        if (!TIERED_DIRECTORY.equals(directory) || Files.exists(path)) {
+            return path;
+        }
+        return restore(directory + "/" + fileName);
+    }
+
+    /**
+     * Drop the cold copy and placement of a file that is being deleted
+     */
+    public void forget(String filePath) throws IOException {
+        if (!TIERED_DIRECTORY.equals(BlobStore.directoryOf(filePath))) {
+            return;
+        }
+        ReentrantLock lock = lockFor(filePath);
+        lock.lock();
+        try {
+            pendingAccesses.remove(filePath);
+            MediaPlacement placement = mediaPlacementRepository.findById(filePath).orElse(null);
+            if (placement == null) {
+                return;
+            }
+            BlobStore store = storeNamed(placement.getColdStore());
+            if (placement.getTier() == MediaPlacement.Tier.COLD && store != null) {
+                store.delete(filePath);
+            }
+            mediaPlacementRepository.delete(placement);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete an object from a cold store unless it is the file's recorded cold copy and the file
+     * is still referenced. A referenced file missing from local disk keeps the object, in case it
+     * is the only copy left. Returns whether the object was, or with dryRun would be, deleted.
+     */
+    public boolean removeStrayCopy(BlobStore store, String path, boolean referenced, boolean dryRun)
+            throws IOException {
+        ReentrantLock lock = lockFor(path);
+        lock.lock();
+        try {
+            MediaPlacement placement = mediaPlacementRepository.findById(path).orElse(null);
+            boolean recorded = placement != null && placement.getTier() == MediaPlacement.Tier.COLD
+                    && store.getName().equals(placement.getColdStore());
+            if (referenced && (recorded || !localBlobStore.exists(path))) {
+                return false;
+            }
+            if (dryRun) {
+                return true;
+            }
+            if (!referenced && placement != null) {
+                pendingAccesses.remove(path);
+                mediaPlacementRepository.delete(placement);
+            }
+            return store.delete(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs on its own thread so copies to the cold store don't hold up the shared scheduler
+     */
+    @Scheduled(initialDelayString = "${file.storage.tiering.initial-delay-ms:300000}",
+               fixedDelayString = "${file.storage.tiering.interval-ms:3600000}")
+    public void schedule() {
+        if (!enabled || running.get()) {
+            return;
+        }
+        Thread worker = new Thread(this::runOnce, "media-tiering");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * One pass of the policy: record requests, promote, drop idle local copies, demote
+     */
+    public void runOnce() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flushAccesses();
+
+            long now = System.currentTimeMillis();
+            Date idleCutoff = new Date(now - idleDays * DAY_MS);
+            int moves = process(limit -> mediaPlacementRepository.findPromotable(promoteAfterHits,
+                    PageRequest.of(0, limit)), this::promote, maxMovesPerRun);
+            moves += process(limit -> mediaPlacementRepository.findIdleLocalCopies(idleCutoff,
+                    new Date(now - localGraceMinutes * 60_000), PageRequest.of(0, limit)),
+                    this::dropLocalCopy, maxMovesPerRun - moves);
+            moves += process(limit -> mediaPlacementRepository.findDemotableVideos(
+                    new Date(now - demoteAfterDays * DAY_MS), idleCutoff, PageRequest.of(0, limit)),
+                    fileName -> demote(TIERED_DIRECTORY + "/" + fileName), maxMovesPerRun - moves);
+
+            // Age the counts, so promotion reflects recent interest
+            mediaPlacementRepository.decayHits();
+            if (moves > 0) {
+                logger.info("Media tiering moved {} files", moves);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warn("Media tiering run failed: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("coldStore", coldStore != null ? coldStore.getName() : null);
+        stats.put("demoted", demoted.get());
+        stats.put("promoted", promoted.get());
+        stats.put("restored", restored.get());
+        stats.put("localCopiesDropped", localCopiesDropped.get());
+        stats.put("failures", failures.get());
+        stats.put("pendingAccesses", pendingAccesses.size());
+        return stats;
+    }
+
+    /**
+     * Apply an action to query results in batches until nothing is left or the budget is spent.
+     * Paths the action declines are skipped for the rest of the run.
+     */
+    private int process(IntFunction<List<String>> query, TierAction action, int budget) throws InterruptedException {
+        Set<String> skipped = new HashSet<>();
+        int done = 0;
+        while (done < budget) {
+            List<String> batch = query.apply(batchSize + skipped.size());
+            batch.removeAll(skipped);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (String path : batch) {
+                if (done >= budget) {
+                    break;
+                }
+                boolean moved;
+                try {
+                    moved = action.apply(path);
+                } catch (IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                    logger.warn("Could not move {} between storage tiers: {}", path, e.getMessage());
+                    moved = false;
+                }
+                if (moved) {
+                    done++;
+                } else {
+                    skipped.add(path);
+                }
+            }
+            Thread.sleep(pauseMs);
+        }
+        return done;
+    }
+
+    private void flushAccesses() {
+        for (String path : pendingAccesses.keySet()) {
+            Access access = pendingAccesses.remove(path);
+            if (access == null) {
+                continue;
+            }
+            Date accessedAt = new Date(access.lastAccessedAt);
+            if (mediaPlacementRepository.recordAccess(path, access.hits, accessedAt) == 0) {
+                mediaPlacementRepository.insertIfAbsent(path, access.hits, accessedAt);
+            }
+        }
+    }
+
+    /**
+     * Copy a hot file to the cold store and mark it cold; the local copy is dropped after the grace period
+     */
+    private boolean demote(String path) throws IOException {
+        ReentrantLock lock = lockFor(path);
+        lock.lock();
+        try {
+            Path local = localBlobStore.path(path);
+            if (pendingAccesses.containsKey(path) || !Files.isRegularFile(local)) {
+                return false;
+            }
+            coldStore.put(path, local);
+
+            MediaPlacement placement = mediaPlacementRepository.findById(path).orElseGet(() -> new MediaPlacement(path));
+            placement.setTier(MediaPlacement.Tier.COLD);
+            placement.setColdStore(coldStore.getName());
+            placement.setLocalCopy(true);
+            placement.setRecentHits(0);
+            placement.setMovedAt(new Date());
+            mediaPlacementRepository.save(placement);
+            demoted.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete the local copy of a cold file, once its cold copy is confirmed to exist
+     */
+    private boolean dropLocalCopy(String path) throws IOException {
+        ReentrantLock lock = lockFor(path);
+        lock.lock();
+        try {
+            MediaPlacement placement = mediaPlacementRepository.findById(path).orElse(null);
+            if (pendingAccesses.containsKey(path) || placement == null
+                    || placement.getTier() != MediaPlacement.Tier.COLD) {
+                return false;
+            }
+            BlobStore store = storeNamed(placement.getColdStore());
+            if (store == null || !store.exists(path)) {
+                logger.warn("Keeping local copy of {}: its cold copy is missing", path);
+                return false;
+            }
+            mediaPlacementRepository.setLocalCopy(path, false);
+            localBlobStore.delete(path);
+            localCopiesDropped.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Make a cold file hot again: keep it local and delete the cold copy
+     */
+    private boolean promote(String path) throws IOException {
+        ReentrantLock lock = lockFor(path);
+        lock.lock();
+        try {
+            MediaPlacement placement = mediaPlacementRepository.findById(path).orElse(null);
+            if (placement == null || placement.getTier() != MediaPlacement.Tier.COLD) {
+                return false;
+            }
+            if (!localBlobStore.exists(path)) {
+                restore(path);
+            }
+            BlobStore store = storeNamed(placement.getColdStore());
+            placement.setTier(MediaPlacement.Tier.HOT);
+            placement.setColdStore(null);
+            placement.setLocalCopy(true);
+            placement.setMovedAt(new Date());
+            mediaPlacementRepository.save(placement);
+            if (store != null) {
+                store.delete(path);
+            }
+            promoted.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fetch a cold file back to local disk. Concurrent requests for it wait for one restore.
+     */
+    private Path restore(String path) throws IOException {
+        String directory = BlobStore.directoryOf(path);
+        String fileName = BlobStore.fileNameOf(path);
+        ReentrantLock lock = lockFor(path);
+        lock.lock();
+        try {
+            Path local = mediaPathResolver.resolve(directory, fileName);
+            if (Files.exists(local)) {
+                // Restored by another request while this one waited
+                return local;
+            }
+            MediaPlacement placement = mediaPlacementRepository.findById(path).orElse(null);
+            if (placement == null || placement.getTier() != MediaPlacement.Tier.COLD) {
+                return local;
+            }
+            BlobStore store = storeNamed(placement.getColdStore());
+            if (store == null) {
+                throw new IOException("Cold store '" + placement.getColdStore() + "' for " + path + " is not configured");
+            }
+
+            Path target = mediaPathResolver.writePath(directory, fileName);
+            Files.createDirectories(target.getParent());
+            Path temp = target.resolveSibling(".restore-" + UUID.randomUUID() + ".tmp");
+            try {
+                store.get(path, temp);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            mediaPlacementRepository.setLocalCopy(path, true);
+            restored.incrementAndGet();
+            logger.info("Restored {} from the {} store", path, store.getName());
+            return target;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BlobStore storeNamed(String name) {
+        for (BlobStore store : blobStores) {
+            if (store.getName().equals(name)) {
+                return store;
+            }
+        }
+        return null;
+    }
+
+    private ReentrantLock lockFor(String path) {
+        return locks[(path.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private interface TierAction {
+        boolean apply(String path) throws IOException;
+    }
+
+    private static class Access {
+        private int hits;
+        private long lastAccessedAt;
+    }
+}
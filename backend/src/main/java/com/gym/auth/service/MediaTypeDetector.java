@@ -0,0 +1,199 @@
+package com.gym.auth.service;
+
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Works out what an uploaded file really is from its leading bytes, rather than trusting
+ * the client's content type or the file extension. Image dimensions are read from the
+ * header only; nothing is decoded. MP4 and QuickTime videos also get their duration,
+ * dimensions, bitrate and codecs from {@link Mp4BoxParser}, and WebM videos their duration
+ * from {@link WebmParser}.
+ */
+@Component
+public class MediaTypeDetector {
+
+    public static final String UNKNOWN_TYPE = "application/octet-stream";
+
+    private static final int SNIFF_BYTES = 32;
+
+    public static class Probe {
+        private final String contentType;
+        private final Integer width;
+        private final Integer height;
+        private final Long durationMillis;
+        private final Long bitrate;
+        private final String codecs;
+
+        Probe(String contentType, Integer width, Integer height) {
+            this(contentType, width, height, null, null, null);
+        }
+
+        Probe(String contentType, Integer width, Integer height, Long durationMillis, Long bitrate, String codecs) {
+            this.contentType = contentType;
+            this.width = width;
+            this.height = height;
+            this.durationMillis = durationMillis;
+            this.bitrate = bitrate;
+            this.codecs = codecs;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public Integer getWidth() {
+            return width;
+        }
+
+        public Integer getHeight() {
+            return height;
+        }
+
+        public Long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public Long getBitrate() {
+            return bitrate;
+        }
+
+        public String getCodecs() {
+            return codecs;
+        }
+
+        public boolean isKnown() {
+            return !UNKNOWN_TYPE.equals(contentType);
+        }
+    }
+
+    /**
+     * @throws Mp4BoxParser.MalformedMp4Exception if the file starts like an MP4 but isn't a usable one
+     */
+    public Probe probe(Path file) throws IOException {
+        byte[] head = new byte[SNIFF_BYTES];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) != -1) {
+                length += n;
+            }
+        }
+        String contentType = detect(head, length);
+
+        if (contentType.equals("video/mp4") || contentType.equals("video/quicktime")) {
+            Mp4BoxParser.Mp4Info info = Mp4BoxParser.parse(file);
+            return new Probe(contentType, info.getWidth(), info.getHeight(), info.getDurationMillis(),
+                    info.getBitrate(), info.getCodecs());
+        }
+        if (contentType.equals("video/webm")) {
+            return new Probe(contentType, null, null, WebmParser.durationMillis(file), null, null);
+        }
+
+        Integer width = null;
+        Integer height = null;
+        if (contentType.startsWith("image/")) {
+            int[] dimensions = imageDimensions(file);
+            if (dimensions != null) {
+                width = dimensions[0];
+                height = dimensions[1];
+            }
+        }
+        return new Probe(contentType, width, height);
+    }
+
+    /**
+     * Content type from magic bytes, or application/octet-stream if not a format we accept
+     */
+    static String detect(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (ascii(head, length, 0, "GIF87a") || ascii(head, length, 0, "GIF89a")) {
+            return "image/gif";
+        }
+        if (ascii(head, length, 0, "RIFF") && ascii(head, length, 8, "WEBP")) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            // Matroska container; WebM is the only flavour browsers play
+            return "video/webm";
+        }
+        if (ascii(head, length, 4, "ftyp") && length >= 12) {
+            String brand = new String(head, 8, 4, StandardCharsets.US_ASCII);
+            switch (brand) {
+                case "heic":
+                case "heix":
+                case "heim":
+                case "heis":
+                case "mif1":
+                case "msf1":
+                    return "image/heic";
+                case "avif":
+                    return "image/avif";
+                case "qt  ":
+                    return "video/quicktime";
+                default:
+                    return "video/mp4";
+            }
+        }
+        return UNKNOWN_TYPE;
+    }
+
+    private static int[] imageDimensions(Path file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... expected) {
+        if (length < offset + expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((head[offset + i] & 0xFF) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean ascii(byte[] head, int length, int offset, String expected) {
+        if (length < offset + expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (head[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,568 @@
+package com.gym.auth.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads duration, dimensions, bitrate and codecs from an MP4 / QuickTime (ISO-BMFF) file.
+ *
+ * Only box headers are read while walking the file, so media data is skipped by seeking
+ * however large it is, and the moov box is descended into just far enough to reach the
+ * handful of small boxes that carry the metadata. Memory use is a few kilobytes per file.
+ *
+ * The duration is the longest of what the movie header, each track header and each track's
+ * sample table say, so a file can't understate its length in one place to pass the limit.
+ * Fragmented files add up their fragments' sample runs; one with no usable duration anywhere
+ * is rejected as malformed.
+ */
+public final class Mp4BoxParser {
+
+    // Largest leaf box payload read into memory; the fields we need are all near the start
+    private static final int MAX_LEAF_BYTES = 4096;
+    // Table entries (stts, trun) read per block when adding up sample durations
+    private static final int ENTRIES_PER_BLOCK = 1024;
+    private static final int MAX_DEPTH = 8;
+
+    private Mp4BoxParser() {
+    }
+
+    public static class MalformedMp4Exception extends IOException {
+        public MalformedMp4Exception(String message) {
+            super(message);
+        }
+    }
+
+    public static class Mp4Info {
+        private long durationMillis;
+        private Integer width;
+        private Integer height;
+        private Long bitrate;
+        private String videoCodec;
+        private String audioCodec;
+        private boolean moovBeforeMdat;
+        private long moovOffset = -1;
+        private long moovSize;
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public Integer getWidth() {
+            return width;
+        }
+
+        public Integer getHeight() {
+            return height;
+        }
+
+        /**
+         * Average bits per second over the whole file
+         */
+        public Long getBitrate() {
+            return bitrate;
+        }
+
+        public String getVideoCodec() {
+            return videoCodec;
+        }
+
+        public String getAudioCodec() {
+            return audioCodec;
+        }
+
+        /**
+         * RFC 6381 codecs parameter, e.g. "avc1.64001f, mp4a", as used in a MIME type
+         */
+        public String getCodecs() {
+            if (videoCodec == null) {
+                return audioCodec;
+            }
+            return audioCodec == null ? videoCodec : videoCodec + ", " + audioCodec;
+        }
+
+        /**
+         * Whether a player can start before the whole file has arrived ("faststart")
+         */
+        public boolean isMoovBeforeMdat() {
+            return moovBeforeMdat;
+        }
+
+        public long getMoovOffset() {
+            return moovOffset;
+        }
+
+        public long getMoovSize() {
+            return moovSize;
+        }
+    }
+
+    public static Mp4Info parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return parse(channel);
+        }
+    }
+
+    public static Mp4Info parse(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        Mp4Info info = new Mp4Info();
+        Parse state = new Parse();
+        boolean sawMdat = false;
+
+        long position = 0;
+        while (position + 8 <= fileSize) {
+            Box box = readHeader(channel, position, fileSize);
+            if ("moov".equals(box.type)) {
+                info.moovOffset = box.start;
+                info.moovSize = box.end - box.start;
+                info.moovBeforeMdat = !sawMdat;
+                try {
+                    walk(channel, box, state, 0);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    // A header box shorter than its format requires
+                    throw new MalformedMp4Exception("Truncated box inside moov");
+                }
+                if (!state.fragmented) {
+                    break;
+                }
+            } else if ("moof".equals(box.type) && info.moovOffset >= 0) {
+                try {
+                    walkFragment(channel, box, state, 0);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    throw new MalformedMp4Exception("Truncated box inside moof");
+                }
+            }
+            if ("mdat".equals(box.type)) {
+                sawMdat = true;
+            }
+            position = box.end;
+        }
+        if (info.moovOffset < 0) {
+            throw new MalformedMp4Exception("No moov box; not a complete MP4 file");
+        }
+
+        long duration = 0;
+        if (state.movieTimescale > 0) {
+            duration = toMillis(Math.max(state.movieDuration, state.fragmentDuration), state.movieTimescale);
+        }
+        duration = Math.max(duration, state.longestTrackMillis);
+        for (Map.Entry<Long, Long> entry : state.fragmentTicks.entrySet()) {
+            Long timescale = state.trackTimescales.get(entry.getKey());
+            if (timescale != null && timescale > 0) {
+                duration = Math.max(duration, toMillis(entry.getValue(), timescale));
+            }
+        }
+        if (duration <= 0) {
+            throw new MalformedMp4Exception("MP4 file has no duration");
+        }
+        info.durationMillis = duration;
+
+        info.width = state.videoWidth;
+        info.height = state.videoHeight;
+        info.videoCodec = state.videoCodec;
+        info.audioCodec = state.audioCodec;
+        if (info.durationMillis > 0) {
+            info.bitrate = fileSize * 8 * 1000 / info.durationMillis;
+        }
+        return info;
+    }
+
+    private static void walk(FileChannel channel, Box parent, Parse state, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new MalformedMp4Exception("MP4 boxes nested too deeply");
+        }
+        long position = parent.payload;
+        while (position + 8 <= parent.end) {
+            Box box = readHeader(channel, position, parent.end);
+            switch (box.type) {
+                case "trak":
+                    state.startTrack();
+                    walk(channel, box, state, depth + 1);
+                    state.endTrack();
+                    break;
+                case "mdia":
+                case "minf":
+                case "stbl":
+                    walk(channel, box, state, depth + 1);
+                    break;
+                case "mvex":
+                    state.fragmented = true;
+                    walk(channel, box, state, depth + 1);
+                    break;
+                case "trex":
+                    readTrex(leaf(channel, box), state);
+                    break;
+                case "stts":
+                    state.trackSampleTicks = sumStts(channel, box);
+                    break;
+                case "mvhd":
+                    readMvhd(leaf(channel, box), state);
+                    break;
+                case "mehd":
+                    readMehd(leaf(channel, box), state);
+                    break;
+                case "tkhd":
+                    readTkhd(leaf(channel, box), state);
+                    break;
+                case "mdhd":
+                    readMdhd(leaf(channel, box), state);
+                    break;
+                case "hdlr":
+                    readHdlr(leaf(channel, box), state);
+                    break;
+                case "stsd":
+                    readStsd(leaf(channel, box), state);
+                    break;
+                default:
+                    break;
+            }
+            position = box.end;
+        }
+    }
+
+    private static void readMvhd(ByteBuffer data, Parse state) {
+        int version = data.get() & 0xff;
+        skip(data, 3);
+        if (version == 1) {
+            skip(data, 16);
+            state.movieTimescale = data.getInt() & 0xffffffffL;
+            state.movieDuration = data.getLong();
+        } else {
+            skip(data, 8);
+            state.movieTimescale = data.getInt() & 0xffffffffL;
+            state.movieDuration = data.getInt() & 0xffffffffL;
+        }
+    }
+
+    private static void readMehd(ByteBuffer data, Parse state) {
+        int version = data.get() & 0xff;
+        skip(data, 3);
+        state.fragmentDuration = version == 1 ? data.getLong() : data.getInt() & 0xffffffffL;
+    }
+
+    private static void readTkhd(ByteBuffer data, Parse state) {
+        int version = data.get() & 0xff;
+        skip(data, 3);
+        // Creation and modification times, then the track id
+        skip(data, version == 1 ? 16 : 8);
+        state.trackId = data.getInt() & 0xffffffffL;
+        // Reserved and duration, then layer, volume and the matrix
+        skip(data, version == 1 ? 12 : 8);
+        skip(data, 52);
+        // 16.16 fixed point display size
+        state.trackWidth = data.getInt() >>> 16;
+        state.trackHeight = data.getInt() >>> 16;
+    }
+
+    private static void readTrex(ByteBuffer data, Parse state) {
+        skip(data, 4);
+        long trackId = data.getInt() & 0xffffffffL;
+        skip(data, 4);
+        state.trexDurations.put(trackId, data.getInt() & 0xffffffffL);
+    }
+
+    private static void readMdhd(ByteBuffer data, Parse state) {
+        int version = data.get() & 0xff;
+        skip(data, 3);
+        long timescale;
+        long duration;
+        if (version == 1) {
+            skip(data, 16);
+            timescale = data.getInt() & 0xffffffffL;
+            duration = data.getLong();
+        } else {
+            skip(data, 8);
+            timescale = data.getInt() & 0xffffffffL;
+            duration = data.getInt() & 0xffffffffL;
+        }
+        state.trackTimescale = timescale;
+        if (timescale > 0) {
+            state.trackMillis = toMillis(duration, timescale);
+        }
+    }
+
+    /**
+     * Total of sample count times sample delta over a time-to-sample table, in track ticks
+     */
+    private static long sumStts(FileChannel channel, Box box) throws IOException {
+        long count = read(channel, box.payload, 8).getInt(4) & 0xffffffffL;
+        return sumEntries(channel, box, box.payload + 8, count, 8, (block, at) ->
+                multiply(block.getInt(at) & 0xffffffffL, block.getInt(at + 4) & 0xffffffffL));
+    }
+
+    /**
+     * Adds up sample durations in a movie fragment, per track
+     */
+    private static void walkFragment(FileChannel channel, Box parent, Parse state, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new MalformedMp4Exception("MP4 boxes nested too deeply");
+        }
+        long position = parent.payload;
+        while (position + 8 <= parent.end) {
+            Box box = readHeader(channel, position, parent.end);
+            switch (box.type) {
+                case "traf":
+                    state.fragmentTrackId = -1;
+                    state.fragmentDefaultDuration = -1;
+                    walkFragment(channel, box, state, depth + 1);
+                    break;
+                case "tfhd":
+                    readTfhd(leaf(channel, box), state);
+                    break;
+                case "trun":
+                    if (state.fragmentTrackId >= 0) {
+                        state.fragmentTicks.merge(state.fragmentTrackId, sumTrun(channel, box, state), Mp4BoxParser::add);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            position = box.end;
+        }
+    }
+
+    private static void readTfhd(ByteBuffer data, Parse state) {
+        int flags = data.getInt() & 0xffffff;
+        state.fragmentTrackId = data.getInt() & 0xffffffffL;
+        if ((flags & 0x01) != 0) {
+            skip(data, 8);
+        }
+        if ((flags & 0x02) != 0) {
+            skip(data, 4);
+        }
+        if ((flags & 0x08) != 0) {
+            state.fragmentDefaultDuration = data.getInt() & 0xffffffffL;
+        }
+    }
+
+    private static long sumTrun(FileChannel channel, Box box, Parse state) throws IOException {
+        ByteBuffer header = read(channel, box.payload, 8);
+        int flags = header.getInt(0) & 0xffffff;
+        long count = header.getInt(4) & 0xffffffffL;
+        if ((flags & 0x100) == 0) {
+            // Every sample has the fragment's, or failing that the track's, default duration
+            long defaultDuration = state.fragmentDefaultDuration >= 0 ? state.fragmentDefaultDuration
+                    : state.trexDurations.getOrDefault(state.fragmentTrackId, 0L);
+            return multiply(count, defaultDuration);
+        }
+        long entriesStart = box.payload + 8 + ((flags & 0x01) != 0 ? 4 : 0) + ((flags & 0x04) != 0 ? 4 : 0);
+        // Duration, size, flags and composition offset are each present or not; duration comes first
+        int entrySize = 4 * Integer.bitCount(flags & 0xf00);
+        return sumEntries(channel, box, entriesStart, count, entrySize, (block, at) -> block.getInt(at) & 0xffffffffL);
+    }
+
+    private interface EntryValue {
+        long of(ByteBuffer block, int at);
+    }
+
+    private static long sumEntries(FileChannel channel, Box box, long start, long count, int entrySize,
+                                   EntryValue value) throws IOException {
+        if (count > (box.end - start) / entrySize) {
+            throw new MalformedMp4Exception("'" + box.type + "' table larger than its box");
+        }
+        long total = 0;
+        long done = 0;
+        while (done < count) {
+            int n = (int) Math.min(ENTRIES_PER_BLOCK, count - done);
+            ByteBuffer block = read(channel, start + done * entrySize, n * entrySize);
+            for (int i = 0; i < n; i++) {
+                total = add(total, value.of(block, i * entrySize));
+            }
+            done += n;
+        }
+        return total;
+    }
+
+    // Saturating, so a crafted table can only make a file look longer, never wrap to short
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long multiply(long a, long b) {
+        return b != 0 && a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+
+    private static void readHdlr(ByteBuffer data, Parse state) {
+        skip(data, 8);
+        state.trackHandler = fourcc(data);
+    }
+
+    /**
+     * The first sample entry names the codec; for H.264 its avcC box adds profile and level
+     */
+    private static void readStsd(ByteBuffer data, Parse state) {
+        skip(data, 4);
+        if (data.getInt() == 0 || data.remaining() < 8) {
+            return;
+        }
+        int entryStart = data.position();
+        long entrySize = data.getInt() & 0xffffffffL;
+        String format = fourcc(data);
+        String codec = format;
+
+        if ("avc1".equals(format) || "avc3".equals(format)) {
+            // Visual sample entry fields precede the child boxes
+            int childStart = entryStart + 8 + 78;
+            int entryEnd = (int) Math.min(data.limit(), entryStart + entrySize);
+            int position = childStart;
+            while (position + 12 <= entryEnd) {
+                int size = data.getInt(position);
+                String type = fourccAt(data, position + 4);
+                if ("avcC".equals(type)) {
+                    codec = String.format("%s.%02x%02x%02x", format,
+                            data.get(position + 9) & 0xff, data.get(position + 10) & 0xff, data.get(position + 11) & 0xff);
+                    break;
+                }
+                if (size < 8) {
+                    break;
+                }
+                position += size;
+            }
+        }
+        state.sampleFormat = codec;
+    }
+
+    /**
+     * Split so that a huge duration in a crafted file can't overflow into a small one
+     */
+    private static long toMillis(long duration, long timescale) {
+        if (duration < 0) {
+            return 0;
+        }
+        return duration / timescale * 1000 + duration % timescale * 1000 / timescale;
+    }
+
+    static Box readHeader(FileChannel channel, long position, long limit) throws IOException {
+        ByteBuffer header = read(channel, position, 8);
+        long size = header.getInt() & 0xffffffffL;
+        String type = fourcc(header);
+        int headerSize = 8;
+        if (size == 1) {
+            size = read(channel, position + 8, 8).getLong();
+            headerSize = 16;
+        } else if (size == 0) {
+            // Box extends to the end of its container
+            size = limit - position;
+        }
+        if (size < headerSize || position + size > limit) {
+            throw new MalformedMp4Exception("Bad size for '" + type + "' box at offset " + position);
+        }
+        return new Box(type, position, position + headerSize, position + size);
+    }
+
+    private static ByteBuffer leaf(FileChannel channel, Box box) throws IOException {
+        int length = (int) Math.min(box.end - box.payload, MAX_LEAF_BYTES);
+        return read(channel, box.payload, length);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("MP4 file truncated at offset " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void skip(ByteBuffer data, int bytes) {
+        data.position(data.position() + bytes);
+    }
+
+    private static String fourcc(ByteBuffer data) {
+        byte[] type = new byte[4];
+        data.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static String fourccAt(ByteBuffer data, int position) {
+        byte[] type = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            type[i] = data.get(position + i);
+        }
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    static class Box {
+        final String type;
+        final long start;
+        final long payload;
+        final long end;
+
+        Box(String type, long start, long payload, long end) {
+            this.type = type;
+            this.start = start;
+            this.payload = payload;
+            this.end = end;
+        }
+    }
+
+    /**
+     * What has been learned so far; track fields are reset at each trak
+     */
+    private static class Parse {
+        private long movieTimescale;
+        private long movieDuration;
+        private long fragmentDuration;
+        private long longestTrackMillis;
+        private Integer videoWidth;
+        private Integer videoHeight;
+        private String videoCodec;
+        private String audioCodec;
+        private boolean fragmented;
+        private final Map<Long, Long> trackTimescales = new HashMap<>();
+        private final Map<Long, Long> trexDurations = new HashMap<>();
+        private final Map<Long, Long> fragmentTicks = new HashMap<>();
+
+        private long trackId;
+        private String trackHandler;
+        private int trackWidth;
+        private int trackHeight;
+        private long trackTimescale;
+        private long trackMillis;
+        private long trackSampleTicks;
+        private String sampleFormat;
+
+        private long fragmentTrackId;
+        private long fragmentDefaultDuration;
+
+        void startTrack() {
+            trackId = -1;
+            trackHandler = null;
+            trackWidth = 0;
+            trackHeight = 0;
+            trackTimescale = 0;
+            trackMillis = 0;
+            trackSampleTicks = 0;
+            sampleFormat = null;
+        }
+
+        void endTrack() {
+            if (trackTimescale > 0) {
+                trackMillis = Math.max(trackMillis, toMillis(trackSampleTicks, trackTimescale));
+                if (trackId >= 0) {
+                    trackTimescales.put(trackId, trackTimescale);
+                }
+            }
+            longestTrackMillis = Math.max(longestTrackMillis, trackMillis);
+            if ("vide".equals(trackHandler) && videoCodec == null) {
+                videoCodec = sampleFormat;
+                if (trackWidth > 0 && trackHeight > 0) {
+                    videoWidth = trackWidth;
+                    videoHeight = trackHeight;
+                }
+            } else if ("soun".equals(trackHandler) && audioCodec == null) {
+                audioCodec = sampleFormat;
+            }
+        }
+    }
+}
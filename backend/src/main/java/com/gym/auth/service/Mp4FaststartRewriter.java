@@ -0,0 +1,200 @@
+package com.gym.auth.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites an MP4 whose moov box comes after the media data so that moov comes first, right
+ * after ftyp, the way qt-faststart does. A browser can then start playing as soon as the
+ * first bytes arrive instead of downloading the whole file to find the index.
+ *
+ * Boxes are copied channel to channel, and the chunk offset tables (stco/co64) are patched
+ * in fixed-size blocks, so memory use doesn't depend on the file or moov size. Moving moov
+ * forward shifts the media data by exactly the size of moov; nothing else changes, so the
+ * output is the same length as the input.
+ */
+public final class Mp4FaststartRewriter {
+
+    // Chunk offset entries patched per read
+    private static final int ENTRIES_PER_BLOCK = 4096;
+    private static final int MAX_DEPTH = 8;
+
+    private Mp4FaststartRewriter() {
+    }
+
+    /**
+     * Write a faststart copy of source to target, which must not exist yet. Returns false,
+     * leaving target untouched, if the file is already faststart or can't be rewritten safely
+     * (fragmented, compressed moov, or offsets that would no longer fit in 32 bits).
+     */
+    public static boolean rewrite(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long fileSize = in.size();
+            List<Mp4BoxParser.Box> boxes = new ArrayList<>();
+            Mp4BoxParser.Box moov = null;
+            boolean sawMdat = false;
+            boolean moovFirst = false;
+
+            long position = 0;
+            while (position + 8 <= fileSize) {
+                Mp4BoxParser.Box box = Mp4BoxParser.readHeader(in, position, fileSize);
+                switch (box.type) {
+                    case "moov":
+                        if (moov != null) {
+                            return false;
+                        }
+                        moov = box;
+                        moovFirst = !sawMdat;
+                        break;
+                    case "mdat":
+                        sawMdat = true;
+                        break;
+                    case "moof":
+                        // Fragments address data relative to themselves; leave them be
+                        return false;
+                    default:
+                        break;
+                }
+                boxes.add(box);
+                position = box.end;
+            }
+            if (moov == null || moovFirst || position != fileSize) {
+                return false;
+            }
+
+            List<Mp4BoxParser.Box> tables = new ArrayList<>();
+            if (!collectChunkOffsetTables(in, moov, tables, 0)) {
+                return false;
+            }
+            // Every shifted offset still lies inside the file, so 32-bit tables only overflow on a file that big
+            if (fileSize > 0xFFFFFFFFL) {
+                for (Mp4BoxParser.Box table : tables) {
+                    if ("stco".equals(table.type)) {
+                        return false;
+                    }
+                }
+            }
+
+            Mp4BoxParser.Box first = boxes.get(0);
+            long insertAt = "ftyp".equals(first.type) ? first.end : 0;
+            long moovSize = moov.end - moov.start;
+
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                transfer(in, 0, insertAt, out);
+                long moovAt = out.position();
+                transfer(in, moov.start, moovSize, out);
+                for (Mp4BoxParser.Box box : boxes) {
+                    if (box != moov && box.start >= insertAt) {
+                        transfer(in, box.start, box.end - box.start, out);
+                    }
+                }
+                for (Mp4BoxParser.Box table : tables) {
+                    patch(in, out, table, moovAt - moov.start, insertAt, moov.start, moovSize);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Find every stco/co64 box in moov. Returns false if moov holds something we can't patch.
+     */
+    private static boolean collectChunkOffsetTables(FileChannel in, Mp4BoxParser.Box parent,
+                                                    List<Mp4BoxParser.Box> tables, int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            throw new Mp4BoxParser.MalformedMp4Exception("MP4 boxes nested too deeply");
+        }
+        long position = parent.payload;
+        while (position + 8 <= parent.end) {
+            Mp4BoxParser.Box box = Mp4BoxParser.readHeader(in, position, parent.end);
+            switch (box.type) {
+                case "trak":
+                case "mdia":
+                case "minf":
+                case "stbl":
+                    if (!collectChunkOffsetTables(in, box, tables, depth + 1)) {
+                        return false;
+                    }
+                    break;
+                case "stco":
+                case "co64":
+                    tables.add(box);
+                    break;
+                case "cmov":
+                    // Compressed movie header (old QuickTime); its offsets can't be reached
+                    return false;
+                default:
+                    break;
+            }
+            position = box.end;
+        }
+        return true;
+    }
+
+    /**
+     * Shift the offsets in one chunk offset table that point between the insertion point and
+     * the old moov, and write the table at its new place in the output
+     */
+    private static void patch(FileChannel in, FileChannel out, Mp4BoxParser.Box table, long moved,
+                              long insertAt, long oldMoovStart, long moovSize) throws IOException {
+        int entrySize = "co64".equals(table.type) ? 8 : 4;
+        ByteBuffer header = read(in, table.payload, 8);
+        long count = header.getInt(4) & 0xffffffffL;
+        long entriesStart = table.payload + 8;
+        if (entriesStart + count * entrySize > table.end) {
+            throw new Mp4BoxParser.MalformedMp4Exception("Chunk offset table larger than its box");
+        }
+
+        long done = 0;
+        while (done < count) {
+            int n = (int) Math.min(ENTRIES_PER_BLOCK, count - done);
+            long position = entriesStart + done * entrySize;
+            ByteBuffer block = read(in, position, n * entrySize);
+            for (int i = 0; i < n; i++) {
+                int at = i * entrySize;
+                long offset = entrySize == 8 ? block.getLong(at) : block.getInt(at) & 0xffffffffL;
+                if (offset >= insertAt && offset < oldMoovStart) {
+                    offset += moovSize;
+                }
+                if (entrySize == 8) {
+                    block.putLong(at, offset);
+                } else {
+                    block.putInt(at, (int) offset);
+                }
+            }
+            block.rewind();
+            long target = position + moved;
+            while (block.hasRemaining()) {
+                target += out.write(block, target);
+            }
+            done += n;
+        }
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long n = in.transferTo(position, end - position, out);
+            if (n <= 0) {
+                throw new IOException("Could not copy MP4 data at offset " + position);
+            }
+            position += n;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new Mp4BoxParser.MalformedMp4Exception("MP4 file truncated at offset " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
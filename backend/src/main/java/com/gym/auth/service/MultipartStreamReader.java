@@ -0,0 +1,335 @@
+package com.gym.auth.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Incremental multipart/form-data parser over the raw request body.
+ *
+ * Parts are handed out one at a time with a stream over their body, so each file can be
+ * written straight to storage as it arrives instead of being spooled by the container first.
+ * Memory use is one fixed buffer regardless of upload size. Size limits are enforced while
+ * reading: for each part (set by the caller) and for the request as a whole.
+ */
+public class MultipartStreamReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final long maxRequestBytes;
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private long requestBytes;
+
+    private boolean started;
+    private boolean finished;
+    private PartInputStream current;
+
+    public MultipartStreamReader(InputStream in, String boundary, long maxRequestBytes) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.maxRequestBytes = maxRequestBytes;
+        // The first boundary has no CRLF in front of it; pretend it does so every delimiter looks the same
+        buf[0] = '\r';
+        buf[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * The boundary parameter of a multipart/form-data content type, or null if there isn't one
+     */
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String boundary = param.substring("boundary=".length());
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Advance to the next part, discarding whatever is left of the current one.
+     * Returns null after the closing boundary.
+     */
+    public Part next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (current != null) {
+            current.drain();
+            current = null;
+        } else if (!started) {
+            // Skip the preamble up to the first boundary
+            new PartInputStream(Long.MAX_VALUE).drain();
+        }
+        started = true;
+
+        // After a delimiter comes either "--" (the end) or CRLF and the part headers
+        if (!ensure(2)) {
+            throw new MalformedMultipartException("Unexpected end of multipart body");
+        }
+        if (buf[pos] == '-' && buf[pos + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        skipLinearWhitespace();
+        expect(CRLF);
+
+        String name = null;
+        String fileName = null;
+        String contentType = null;
+        int headerBytes = 0;
+        String line;
+        while (!(line = readHeaderLine()).isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new MalformedMultipartException("Part headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-disposition")) {
+                name = dispositionParam(value, "name");
+                fileName = dispositionParam(value, "filename");
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+
+        current = new PartInputStream(Long.MAX_VALUE);
+        return new Part(name, fileName, contentType, current);
+    }
+
+    public static class Part {
+        private final String name;
+        private final String fileName;
+        private final String contentType;
+        private final PartInputStream body;
+
+        Part(String name, String fileName, String contentType, PartInputStream body) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The submitted file name, or null for plain form fields
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * The part body, failing with {@link LimitExceededException} once more than maxBytes are read
+         */
+        public InputStream getInputStream(long maxBytes) {
+            body.maxBytes = maxBytes;
+            return body;
+        }
+
+        public String readString(int maxBytes) throws IOException {
+            InputStream stream = getInputStream(maxBytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            int n;
+            while ((n = stream.read(chunk)) != -1) {
+                out.write(chunk, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public static class MalformedMultipartException extends IOException {
+        public MalformedMultipartException(String message) {
+            super(message);
+        }
+    }
+
+    public static class LimitExceededException extends IOException {
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Body of one part: everything up to the next delimiter
+     */
+    private class PartInputStream extends InputStream {
+        private long maxBytes;
+        private long read;
+        private boolean ended;
+
+        PartInputStream(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            // Keep a full delimiter's worth in view so one split across reads is still recognised
+            ensure(delimiter.length);
+            int found = indexOf(delimiter, pos, limit);
+            int available;
+            if (found >= 0) {
+                available = found - pos;
+                if (available == 0) {
+                    pos += delimiter.length;
+                    ended = true;
+                    return -1;
+                }
+            } else if (eof) {
+                throw new MalformedMultipartException("Multipart body ended without a closing boundary");
+            } else {
+                available = limit - pos - (delimiter.length - 1);
+            }
+
+            int n = Math.min(len, available);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            read += n;
+            if (read > maxBytes) {
+                throw new LimitExceededException("Part exceeds " + maxBytes + " bytes");
+            }
+            return n;
+        }
+
+        void drain() throws IOException {
+            maxBytes = Long.MAX_VALUE;
+            byte[] skip = new byte[8192];
+            while (read(skip, 0, skip.length) != -1) {
+                // discard
+            }
+        }
+    }
+
+    /**
+     * Make at least n bytes available at pos unless the body ends first; returns whether it could
+     */
+    private boolean ensure(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        while (limit - pos < n && !eof) {
+            int count = in.read(buf, limit, buf.length - limit);
+            if (count == -1) {
+                eof = true;
+                break;
+            }
+            limit += count;
+            requestBytes += count;
+            if (requestBytes > maxRequestBytes) {
+                throw new LimitExceededException("Request exceeds " + maxRequestBytes + " bytes");
+            }
+        }
+        return limit - pos >= n;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buf[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void expect(byte[] bytes) throws IOException {
+        if (!ensure(bytes.length)) {
+            throw new MalformedMultipartException("Unexpected end of multipart body");
+        }
+        for (byte b : bytes) {
+            if (buf[pos++] != b) {
+                throw new MalformedMultipartException("Malformed multipart boundary line");
+            }
+        }
+    }
+
+    private void skipLinearWhitespace() throws IOException {
+        while (ensure(1) && (buf[pos] == ' ' || buf[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (!ensure(2)) {
+                throw new MalformedMultipartException("Unexpected end of part headers");
+            }
+            if (buf[pos] == '\r' && buf[pos + 1] == '\n') {
+                pos += 2;
+                return new String(line.toByteArray(), StandardCharsets.UTF_8);
+            }
+            line.write(buf[pos++]);
+            if (line.size() > MAX_HEADER_BYTES) {
+                throw new MalformedMultipartException("Part header line too long");
+            }
+        }
+    }
+
+    private static String dispositionParam(String disposition, String param) {
+        for (String piece : disposition.split(";")) {
+            piece = piece.trim();
+            int eq = piece.indexOf('=');
+            if (eq < 0 || !piece.substring(0, eq).trim().equalsIgnoreCase(param)) {
+                continue;
+            }
+            String value = piece.substring(eq + 1).trim();
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            return value;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,433 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.ImageVariant;
+import com.gym.auth.model.MediaBlob;
+import com.gym.auth.repository.MediaBlobRepository;
+import com.gym.auth.repository.PostImageRepository;
+import com.gym.auth.repository.PostVideoRepository;
+import com.gym.auth.repository.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes media files that no row refers to any more: leftovers from crashes between commit
+ * and deletion, from failed uploads, and from the era when files were deleted inside the
+ * transaction.
+ *
+ * The upload tree is walked lazily and checked against post_images, post_videos and
+ * upload_sessions in batches, so memory stays flat however many files there are. Each
+ * batch is followed by a pause to keep the disk available for requests. Files younger than
+ * the grace period are never touched, because an upload is written before its post commits.
+ *
+ * Each cold store is listed the same way, and an object is deleted unless it is the recorded
+ * cold copy of a file that is still referenced. Before either walk, media_blobs reference
+ * counts are recomputed from the rows holding them. A count that is too low is raised at
+ * once. One that is too high may belong to an upload or delete still between its two
+ * transactions, so it is only lowered if the same count is found again on the next run; a
+ * blob left with no references loses its row and is then collected like any other orphan.
+ */
+@Component
+public class OrphanMediaReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrphanMediaReconciler.class);
+
+    private static final String IMAGE_DIRECTORY = "images";
+    private static final String VIDEO_DIRECTORY = "videos";
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PostImageRepository postImageRepository;
+
+    @Autowired
+    private PostVideoRepository postVideoRepository;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private MediaBlobRepository mediaBlobRepository;
+
+    @Autowired
+    private MediaTieringService mediaTieringService;
+
+    @Autowired
+    private List<BlobStore> blobStores;
+
+    @Value("${app.media.orphan-gc.enabled:true}")
+    private boolean enabled;
+
+    // Only log what would be removed
+    @Value("${app.media.orphan-gc.dry-run:false}")
+    private boolean dryRun;
+
+    @Value("${app.media.orphan-gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.media.orphan-gc.pause-ms:100}")
+    private long pauseMs;
+
+    @Value("${app.media.orphan-gc.min-age-minutes:60}")
+    private long minAgeMinutes;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Blob paths found with too high a count on the last run, and the count they had
+    private Map<String, Long> suspectedOverCounts = new HashMap<>();
+
+    /**
+     * Runs on its own thread so a long walk doesn't hold up the shared scheduler
+     */
+    @Scheduled(initialDelayString = "${app.media.orphan-gc.initial-delay-ms:600000}",
+               fixedDelayString = "${app.media.orphan-gc.interval-ms:21600000}")
+    public void schedule() {
+        if (!enabled || running.get()) {
+            return;
+        }
+        Thread worker = new Thread(this::reconcile, "orphan-media-gc");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Walk every media directory and cold store once; returns the number of orphaned files removed
+     */
+    public long reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Orphan media reconcile already running");
+            return 0;
+        }
+        try {
+            long cutoff = System.currentTimeMillis() - minAgeMinutes * 60_000;
+            long repaired = repairRefCounts(cutoff);
+            if (repaired > 0) {
+                logger.info("Orphan media reconcile {} {} blob reference counts",
+                        dryRun ? "would correct" : "corrected", repaired);
+            }
+            long removed = reconcile(IMAGE_DIRECTORY, cutoff) + reconcile(VIDEO_DIRECTORY, cutoff);
+            for (ImageVariant variant : ImageVariant.values()) {
+                removed += reconcile(ImageVariantService.variantDirectory(variant), cutoff);
+            }
+            for (BlobStore store : blobStores) {
+                if (!LocalBlobStore.NAME.equals(store.getName())) {
+                    removed += reconcileColdStore(store, cutoff);
+                }
+            }
+            if (removed > 0) {
+                logger.info("Orphan media reconcile {} {} files", dryRun ? "would remove" : "removed", removed);
+            }
+            return removed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long reconcile(String directory, long cutoff) throws InterruptedException {
+        Path base = mediaPathResolver.root().resolve(directory);
+        if (!Files.isDirectory(base)) {
+            return 0;
+        }
+
+        Walker walker = new Walker(directory, base, cutoff);
+        try {
+            Files.walkFileTree(base, walker);
+            walker.flush();
+        } catch (InterruptedIOException e) {
+            throw e.interrupted;
+        } catch (IOException e) {
+            logger.warn("Orphan media reconcile of {} stopped: {}", directory, e.getMessage());
+        }
+        return walker.removed;
+    }
+
+    /**
+     * Recompute the reference count of every content-addressed blob older than the cutoff;
+     * returns the number of counts corrected
+     */
+    private long repairRefCounts(long cutoff) throws InterruptedException {
+        Map<String, Long> overCounts = new HashMap<>();
+        long repaired = 0;
+        String after = "";
+        List<MediaBlob> page;
+        do {
+            page = mediaBlobRepository.findPageAfter(after, PageRequest.of(0, batchSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            after = page.get(page.size() - 1).getPath();
+            Map<String, Long> counts = countReferences(page);
+
+            for (MediaBlob blob : page) {
+                String path = blob.getPath();
+                Long actual = counts.get(path);
+                long expected = blob.getRefCount();
+                if (actual == null || actual == expected
+                        || (blob.getCreatedAt() != null && blob.getCreatedAt().getTime() > cutoff)) {
+                    continue;
+                }
+                if (actual < expected && !Long.valueOf(expected).equals(suspectedOverCounts.get(path))) {
+                    overCounts.put(path, expected);
+                    continue;
+                }
+                repaired++;
+                logger.info("Blob {} has {} references but a count of {}", path, actual, expected);
+                if (!dryRun && mediaBlobRepository.repairRefCount(path, expected, actual) > 0 && actual == 0) {
+                    // Without its row the file is an ordinary orphan, removed by the walk that follows
+                    mediaBlobRepository.deleteIfUnreferenced(path);
+                }
+            }
+            Thread.sleep(pauseMs);
+        } while (page.size() == batchSize);
+        suspectedOverCounts = overCounts;
+        return repaired;
+    }
+
+    /**
+     * References held on each blob of the page: a post_images row for an image, a post_videos
+     * row or an unattached finished upload for a video. Blobs in other directories are left out.
+     */
+    private Map<String, Long> countReferences(List<MediaBlob> blobs) {
+        List<String> images = new ArrayList<>();
+        List<String> videos = new ArrayList<>();
+        Map<String, Long> counts = new HashMap<>();
+        for (MediaBlob blob : blobs) {
+            String directory = BlobStore.directoryOf(blob.getPath());
+            if (directory.equals(IMAGE_DIRECTORY)) {
+                images.add(BlobStore.fileNameOf(blob.getPath()));
+            } else if (directory.equals(VIDEO_DIRECTORY)) {
+                videos.add(BlobStore.fileNameOf(blob.getPath()));
+            } else {
+                continue;
+            }
+            counts.put(blob.getPath(), 0L);
+        }
+        if (!images.isEmpty()) {
+            addCounts(counts, IMAGE_DIRECTORY, postImageRepository.countByFileNames(images));
+        }
+        if (!videos.isEmpty()) {
+            addCounts(counts, VIDEO_DIRECTORY, postVideoRepository.countByFileNames(videos));
+            addCounts(counts, VIDEO_DIRECTORY, uploadSessionRepository.countCompleteByFileNames(videos));
+        }
+        return counts;
+    }
+
+    private static void addCounts(Map<String, Long> counts, String directory, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            counts.merge(directory + "/" + row[0], ((Number) row[1]).longValue(), Long::sum);
+        }
+    }
+
+    /**
+     * Delete the objects in a cold store that are not the cold copy of a referenced file
+     */
+    private long reconcileColdStore(BlobStore store, long cutoff) throws InterruptedException {
+        List<String> batch = new ArrayList<>();
+        long[] removed = new long[1];
+        try {
+            store.list(VIDEO_DIRECTORY, (key, lastModified) -> {
+                // Demotion writes the object before it records the placement
+                if (lastModified > cutoff || !MediaPathResolver.isValidName(BlobStore.fileNameOf(key))) {
+                    return;
+                }
+                batch.add(key);
+                if (batch.size() >= batchSize) {
+                    removed[0] += removeColdOrphans(store, batch);
+                }
+            });
+            removed[0] += removeColdOrphans(store, batch);
+        } catch (InterruptedIOException e) {
+            throw e.interrupted;
+        } catch (IOException e) {
+            logger.warn("Orphan media reconcile of the {} store stopped: {}", store.getName(), e.getMessage());
+        }
+        return removed[0];
+    }
+
+    private long removeColdOrphans(BlobStore store, List<String> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        List<String> names = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            names.add(BlobStore.fileNameOf(key));
+        }
+        Set<String> referenced = referencedNames(VIDEO_DIRECTORY, names);
+
+        long removed = 0;
+        for (String key : keys) {
+            if (mediaTieringService.removeStrayCopy(store, key, referenced.contains(BlobStore.fileNameOf(key)), dryRun)) {
+                removed++;
+                logger.info("{} orphaned {} object: {}", dryRun ? "Found" : "Removed", store.getName(), key);
+            }
+        }
+        keys.clear();
+        try {
+            Thread.sleep(pauseMs);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e);
+        }
+        return removed;
+    }
+
+    /**
+     * The names in the batch that some row still refers to
+     */
+    private Set<String> referencedNames(String directory, List<String> batch) {
+        Set<String> referenced = new HashSet<>();
+        boolean variants = !directory.equals(IMAGE_DIRECTORY) && !directory.equals(VIDEO_DIRECTORY);
+        if (directory.equals(VIDEO_DIRECTORY)) {
+            referenced.addAll(postVideoRepository.findReferencedFileNames(batch));
+            referenced.addAll(uploadSessionRepository.findReferencedFileNames(batch));
+        } else {
+            // A variant is named after its original, so it is live as long as the original is
+            referenced.addAll(postImageRepository.findReferencedFileNames(batch));
+        }
+        if (!variants) {
+            List<String> paths = new ArrayList<>(batch.size());
+            for (String name : batch) {
+                paths.add(directory + "/" + name);
+            }
+            for (String blobPath : mediaBlobRepository.findExistingPaths(paths)) {
+                referenced.add(blobPath.substring(directory.length() + 1));
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Decide which names in the batch are unreferenced and remove them
+     */
+    private long removeOrphans(String directory, List<Path> files) {
+        List<String> batch = new ArrayList<>(files.size());
+        for (Path file : files) {
+            batch.add(file.getFileName().toString());
+        }
+        Set<String> referenced = referencedNames(directory, batch);
+        boolean variants = !directory.equals(IMAGE_DIRECTORY) && !directory.equals(VIDEO_DIRECTORY);
+
+        long removed = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (referenced.contains(name)) {
+                continue;
+            }
+            removed++;
+            if (dryRun) {
+                logger.info("Orphaned media file: {}", file);
+                continue;
+            }
+            try {
+                if (variants) {
+                    mediaPathResolver.delete(directory, name);
+                } else {
+                    // Also drops any variants rendered from it
+                    fileStorageService.deleteFile(directory + "/" + name);
+                }
+                // In case it sat somewhere other than where the layout would put it
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Could not delete orphaned {}: {}", file, e.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    private class Walker extends SimpleFileVisitor<Path> {
+        private final String directory;
+        private final Path base;
+        private final long cutoff;
+        private final List<Path> batch = new ArrayList<>();
+        private long removed;
+
+        Walker(String directory, Path base, long cutoff) {
+            this.directory = directory;
+            this.base = base;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            // Variants live under images/ but are reconciled separately
+            if (directory.equals(IMAGE_DIRECTORY) && dir.equals(base.resolve("variants"))) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (!attrs.isRegularFile() || attrs.lastModifiedTime().toMillis() > cutoff) {
+                return FileVisitResult.CONTINUE;
+            }
+            String name = file.getFileName().toString();
+            if (name.startsWith(".")) {
+                // Temporary file of an upload or render that never finished
+                if (!dryRun) {
+                    Files.deleteIfExists(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+            batch.add(file);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Removed while we were walking
+            return FileVisitResult.CONTINUE;
+        }
+
+        void flush() throws InterruptedIOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            removed += removeOrphans(directory, batch);
+            batch.clear();
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Carries an interrupt out of the file visitor, which may only throw IOException
+     */
+    private static class InterruptedIOException extends IOException {
+        private final InterruptedException interrupted;
+
+        InterruptedIOException(InterruptedException interrupted) {
+            this.interrupted = interrupted;
+        }
+    }
+}
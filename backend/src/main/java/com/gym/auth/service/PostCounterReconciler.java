@@ -0,0 +1,71 @@
+package com.gym.auth.service;
+
+import com.gym.auth.repository.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically repairs drift between the denormalized likes_count/comments_count
+ * columns on posts and the actual rows in post_likes and comments.
+ * Works through the table in ID ranges so each batch is a short transaction.
+ * One pass also runs at startup, which fills in the columns on rows written before they existed.
+ */
+@Component
+public class PostCounterReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostCounterReconciler.class);
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Value("${app.posts.counter-reconcile-batch-size:1000}")
+    private int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        Thread worker = new Thread(this::reconcile, "post-counter-reconcile");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Scheduled(initialDelayString = "${app.posts.counter-reconcile-interval-ms:3600000}",
+               fixedDelayString = "${app.posts.counter-reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Post counter reconcile already running");
+            return;
+        }
+        try {
+            long maxId = postRepository.findMaxId();
+            int repairedLikes = 0;
+            int repairedComments = 0;
+
+            for (long fromId = 1; fromId <= maxId; fromId += batchSize) {
+                long toId = fromId + batchSize - 1;
+                repairedLikes += postRepository.reconcileLikesCount(fromId, toId);
+                repairedComments += postRepository.reconcileCommentsCount(fromId, toId);
+            }
+
+            if (repairedLikes > 0 || repairedComments > 0) {
+                logger.warn("Repaired counter drift on {} likes_count and {} comments_count rows",
+                        repairedLikes, repairedComments);
+            } else {
+                logger.debug("Post counters consistent up to post ID {}", maxId);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Post counter reconcile failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -1,26 +1,38 @@
 package com.gym.auth.service;
 
-import com.gym.auth.model.Comment;
 import com.gym.auth.model.Post;
 import com.gym.auth.model.User;
+import com.gym.auth.model.dto.CommentResponse;
+import com.gym.auth.model.dto.CursorPage;
+import com.gym.auth.model.dto.PostResponse;
+import com.gym.auth.model.dto.StoredFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface PostService {
-    Post createPost(String text, User user, List<MultipartFile> images, MultipartFile video);
+    Post createPost(String text, User user, List<MultipartFile> images, MultipartFile video, String videoUploadId);
+    Post createPost(String text, User user, List<StoredFile> images, StoredFile video);
+    Post createPost(String text, User user, List<StoredFile> images, String videoUploadId);
     Post getPostById(Long id);
     List<Post> getAllPosts();
     List<Post> getPostsByUser(User user);
+    CursorPage<PostResponse> getFeed(String cursor, Integer size, User currentUser);
+    CursorPage<PostResponse> getUserFeed(Long userId, String cursor, Integer size, User currentUser);
     Post updatePost(Long id, String text, User user);
     void deletePost(Long id, User user);
     void likePost(Long postId, User user);
     void unlikePost(Long postId, User user);
     boolean isPostLikedByUser(Long postId, User user);
+    Set<Long> getLikedPostIds(Collection<Long> postIds, User user);
     long getPostLikesCount(Long postId);
     
     // Comment methods
-    Comment addComment(Long postId, User user, String text);
-    Comment updateComment(Long postId, Long commentId, User user, String text);
-    void deleteComment(Long postId, Long commentId, User user);
+    List<CommentResponse> getComments(Long postId);
+    CursorPage<CommentResponse> getCommentPage(Long postId, String cursor, Integer size);
+    CommentResponse addComment(Long postId, User user, String text);
+    CommentResponse updateComment(Long postId, Long commentId, User user, String text, Long expectedVersion);
+    void deleteComment(Long postId, Long commentId, User user, Long expectedVersion);
 } 
\ No newline at end of file
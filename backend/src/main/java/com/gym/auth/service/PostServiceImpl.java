@@ -1,16 +1,47 @@
 package com.gym.auth.service;
 
 import com.gym.auth.model.*;
+import com.gym.auth.model.dto.CommentResponse;
+import com.gym.auth.model.dto.CommentWriteState;
+import com.gym.auth.model.dto.CursorPage;
+import com.gym.auth.model.dto.KeysetCursor;
+import com.gym.auth.model.dto.PostFeedRow;
+import com.gym.auth.model.dto.PostImageRow;
+import com.gym.auth.model.dto.PostResponse;
+import com.gym.auth.model.dto.PostVideoRow;
+import com.gym.auth.model.dto.StoredFile;
+import com.gym.auth.repository.PostLikeRepository;
+import com.gym.auth.repository.CommentRepository;
+import com.gym.auth.repository.PostImageRepository;
 import com.gym.auth.repository.PostRepository;
+import com.gym.auth.repository.PostVideoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.persistence.EntityNotFoundException;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Service
@@ -19,73 +50,186 @@ public class PostServiceImpl implements PostService {
     @Autowired
     private PostRepository postRepository;
     
+    @Autowired
+    private PostLikeRepository postLikeRepository;
+    
+    @Autowired
+    private PostImageRepository postImageRepository;
+    
+    @Autowired
+    private CommentRepository commentRepository;
+    
+    @Autowired
+    private PostVideoRepository postVideoRepository;
+    
     @Autowired
     private FileStorageService fileStorageService;
     
+    @Autowired
+    private MediaMetadataIndex mediaMetadataIndex;
+    
+    @Autowired
+    private ImageVariantService imageVariantService;
+    
+    @Autowired
+    private MediaDeletionQueue mediaDeletionQueue;
+    
+    @Autowired(required = false)
+    private LikeWriteBuffer likeWriteBuffer;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+    
+    private static final Logger logger = LoggerFactory.getLogger(PostServiceImpl.class);
+    
+    private static final int MAX_IMAGES = 3;
+    private static final int LOCK_RETRY_ATTEMPTS = 3;
+    
     @Value("${app.api.url:http://localhost:8080}")
     private String apiUrl;
+    
+    @Value("${app.feed.default-page-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${app.feed.max-page-size:50}")
+    private int maxPageSize;
 
     @Override
     @Transactional
-    public Post createPost(String text, User user, List<MultipartFile> images, MultipartFile video) {
-        System.out.println("Creating post for user: " + user.getUsername());
-        Post post = new Post(text, user);
+    public Post createPost(String text, User user, List<MultipartFile> images, MultipartFile video,
+                           String videoUploadId) {
+        boolean hasVideo = video != null && !video.isEmpty();
+        boolean hasUpload = videoUploadId != null && !videoUploadId.isEmpty();
+        if (hasVideo && hasUpload) {
+            throw new IllegalArgumentException("Send either a video or a videoUploadId, not both");
+        }
         
-        // Save post first to get the ID
-        post = postRepository.save(post);
-        System.out.println("Post saved with ID: " + post.getId());
+        List<StoredFile> storedImages = new ArrayList<>();
         
         // Process images (max 3)
         if (images != null && !images.isEmpty()) {
-            int imageCount = Math.min(images.size(), 3); // Limit to max 3 images
+            int imageCount = Math.min(images.size(), MAX_IMAGES); // Limit to max 3 images
             System.out.println("Processing " + imageCount + " images");
             
             for (int i = 0; i < imageCount; i++) {
                 MultipartFile imageFile = images.get(i);
                 if (!imageFile.isEmpty()) {
                     System.out.println("Storing image file: " + imageFile.getOriginalFilename());
-                    String fileName = fileStorageService.storeFile(imageFile, "images");
-                    System.out.println("Generated filename: " + fileName);
-                    
-                    String fileUrl = "/api/files/images/" + fileName;
-                    System.out.println("Generated URL: " + fileUrl);
-                    
-                    PostImage postImage = new PostImage(
-                        post, 
-                        fileName, 
-                        imageFile.getContentType(), 
-                        fileUrl
-                    );
-                    
-                    post.addImage(postImage);
-                    System.out.println("Image added to post: " + fileUrl);
+                    storedImages.add(fileStorageService.store(imageFile, "images"));
                 }
             }
         }
         
+        if (hasUpload) {
+            return createPost(text, user, storedImages, videoUploadId);
+        }
+        
         // Process video (only one allowed)
-        if (video != null && !video.isEmpty()) {
+        StoredFile storedVideo = null;
+        if (hasVideo) {
             System.out.println("Storing video file: " + video.getOriginalFilename());
-            String fileName = fileStorageService.storeFile(video, "videos");
-            System.out.println("Generated filename: " + fileName);
+            storedVideo = fileStorageService.store(video, "videos");
+        }
+        
+        return createPost(text, user, storedImages, storedVideo);
+    }
+    
+    @Override
+    @Transactional
+    public Post createPost(String text, User user, List<StoredFile> images, StoredFile video) {
+        System.out.println("Creating post for user: " + user.getUsername());
+        Post post = new Post(text, user);
+        
+        // Save post first to get the ID
+        post = postRepository.save(post);
+        System.out.println("Post saved with ID: " + post.getId());
+        
+        for (StoredFile stored : images.subList(0, Math.min(images.size(), MAX_IMAGES))) {
+            String fileName = stored.getFileName();
+            String fileUrl = "/api/files/images/" + fileName;
+            System.out.println("Generated URL: " + fileUrl);
+            
+            PostImage postImage = new PostImage(
+                post, 
+                fileName, 
+                contentTypeOf(stored), 
+                fileUrl
+            );
+            postImage.setContentHash(stored.getContentHash());
+            postImage.setSizeBytes(stored.getSize());
+            postImage.setWidth(stored.getWidth());
+            postImage.setHeight(stored.getHeight());
+            imageVariantService.onImageStored(fileName, contentTypeOf(stored));
             
+            post.addImage(postImage);
+            System.out.println("Image added to post: " + fileUrl);
+        }
+        
+        if (video != null) {
+            String fileName = video.getFileName();
             String fileUrl = "/api/files/videos/" + fileName;
             System.out.println("Generated URL: " + fileUrl);
             
             PostVideo postVideo = new PostVideo(
                 post, 
                 fileName, 
-                video.getContentType(), 
+                contentTypeOf(video), 
                 fileUrl,
-                30 // Default to max duration of 30 seconds
+                video.getDurationMillis() != null ? (int) Math.round(video.getDurationMillis() / 1000.0) : null
             );
+            postVideo.setContentHash(video.getContentHash());
+            postVideo.setSizeBytes(video.getSize());
+            postVideo.setWidth(video.getWidth());
+            postVideo.setHeight(video.getHeight());
+            postVideo.setBitrate(video.getBitrate());
+            postVideo.setCodecs(video.getCodecs());
             
             post.setVideo(postVideo);
             System.out.println("Video added to post: " + fileUrl);
         }
         
+        forgetMissingAfterCommit(images, video);
         return postRepository.save(post);
     }
+    
+    /**
+     * Create a post whose video was sent earlier through a resumable upload. The upload is
+     * claimed in the same transaction, so it stays available if the post can't be saved.
+     */
+    @Override
+    @Transactional
+    public Post createPost(String text, User user, List<StoredFile> images, String videoUploadId) {
+        StoredFile video = videoUploadId != null ? resumableUploadService.claim(videoUploadId, user) : null;
+        return createPost(text, user, images, video);
+    }
+    
+    /**
+     * A request for one of these names may have been answered 404 while the post was being
+     * written; once it is committed, make the metadata index look again
+     */
+    private void forgetMissingAfterCommit(List<StoredFile> images, StoredFile video) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (StoredFile image : images) {
+                    mediaMetadataIndex.invalidate("images", image.getFileName());
+                }
+                if (video != null) {
+                    mediaMetadataIndex.invalidate("videos", video.getFileName());
+                }
+            }
+        });
+    }
+    
+    private static String contentTypeOf(StoredFile stored) {
+        return stored.getContentType() != null ? stored.getContentType() : "application/octet-stream";
+    }
 
     @Override
     public Post getPostById(Long id) {
@@ -103,6 +247,76 @@ public class PostServiceImpl implements PostService {
         return postRepository.findByUserOrderByCreatedAtDesc(user);
     }
 
+    @Override
+    public CursorPage<PostResponse> getFeed(String cursor, Integer size, User currentUser) {
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        Pageable page = pageOf(size);
+        
+        Slice<PostFeedRow> rows = position == null
+            ? postRepository.findFeed(page)
+            : postRepository.findFeedAfter(position.getCreatedAt(), position.getId(), page);
+        return toFeedPage(rows, currentUser);
+    }
+
+    @Override
+    public CursorPage<PostResponse> getUserFeed(Long userId, String cursor, Integer size, User currentUser) {
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        Pageable page = pageOf(size);
+        
+        Slice<PostFeedRow> rows = position == null
+            ? postRepository.findUserFeed(userId, page)
+            : postRepository.findUserFeedAfter(userId, position.getCreatedAt(), position.getId(), page);
+        return toFeedPage(rows, currentUser);
+    }
+    
+    /**
+     * Assemble a feed page from projections: one query each for the posts, their images,
+     * their videos and the current user's likes, however many posts the page holds
+     */
+    private CursorPage<PostResponse> toFeedPage(Slice<PostFeedRow> rows, User currentUser) {
+        List<PostFeedRow> posts = rows.getContent();
+        if (posts.isEmpty()) {
+            return new CursorPage<>(Collections.emptyList(), null);
+        }
+        
+        List<Long> postIds = posts.stream().map(PostFeedRow::getId).collect(Collectors.toList());
+        
+        Map<Long, List<PostResponse.PostImageResponse>> imagesByPost = new HashMap<>();
+        for (PostImageRow image : postImageRepository.findRowsByPostIds(postIds)) {
+            imagesByPost.computeIfAbsent(image.getPostId(), id -> new ArrayList<>())
+                .add(new PostResponse.PostImageResponse(image.getId(), image.getUrl()));
+        }
+        
+        Map<Long, PostResponse.PostVideoResponse> videoByPost = new HashMap<>();
+        for (PostVideoRow video : postVideoRepository.findRowsByPostIds(postIds)) {
+            videoByPost.put(video.getPostId(),
+                new PostResponse.PostVideoResponse(video));
+        }
+        
+        Set<Long> likedPostIds = getLikedPostIds(postIds, currentUser);
+        
+        List<PostResponse> items = posts.stream()
+            .map(row -> new PostResponse(
+                row,
+                imagesByPost.getOrDefault(row.getId(), Collections.emptyList()),
+                videoByPost.get(row.getId()),
+                likedPostIds.contains(row.getId())))
+            .collect(Collectors.toList());
+        
+        String nextCursor = null;
+        if (rows.hasNext()) {
+            PostFeedRow last = posts.get(posts.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+    
+    // Always page 0: the cursor, not an offset, selects where the page starts
+    private Pageable pageOf(Integer size) {
+        int pageSize = size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+        return PageRequest.of(0, pageSize);
+    }
+
     @Override
     @Transactional
     public Post updatePost(Long id, String text, User user) {
@@ -120,6 +334,10 @@ public class PostServiceImpl implements PostService {
     @Override
     @Transactional
     public void deletePost(Long id, User user) {
+        // Taken first, as every like write does, so no like can arrive between the deletes below
+        if (postRepository.lockById(id) == null) {
+            throw new EntityNotFoundException("Post not found with id: " + id);
+        }
         Post post = getPostById(id);
         
         // Check if the user is the owner of the post
@@ -127,138 +345,215 @@ public class PostServiceImpl implements PostService {
             throw new IllegalStateException("You are not authorized to delete this post");
         }
         
-        // Delete associated files
+        // Delete associated files once the rows are gone for good
         post.getImages().forEach(image -> {
-            fileStorageService.deleteFile("images/" + image.getFileName());
+            mediaDeletionQueue.deleteAfterCommit("images/" + image.getFileName());
         });
         
         if (post.getVideo() != null) {
             PostVideo video = post.getVideo();
             // First detach the video from the post to ensure clean removal
             post.setVideo(null);
-            fileStorageService.deleteFile("videos/" + video.getFileName());
+            mediaDeletionQueue.deleteAfterCommit("videos/" + video.getFileName());
         }
         
-        // Clear all collections to ensure proper cleanup
+        // Likes and comments can number in the thousands; delete them in bulk instead of loading them
+        postLikeRepository.deleteByPostId(id);
+        commentRepository.deleteByPostId(id);
+        
+        // Clear the images to ensure proper cleanup
         post.getImages().clear();
-        post.getLikes().clear();
-        post.getComments().clear();
         
-        // Save the post with cleared collections before deletion
+        // Save the post with cleared images before deletion
         post = postRepository.saveAndFlush(post);
         
-        // Now delete the post
+        // Now delete the post; the cascade finds its likes and comments already gone
         postRepository.delete(post);
     }
 
     @Override
-    @Transactional
     public void likePost(Long postId, User user) {
-        Post post = getPostById(postId);
-        
-        // Check if the user already liked the post
-        boolean alreadyLiked = post.getLikes().stream()
-            .anyMatch(like -> like.getUser().getId().equals(user.getId()));
-        
-        if (!alreadyLiked) {
-            PostLike like = new PostLike(post, user);
-            post.getLikes().add(like);
-            postRepository.save(post);
+        if (likeWriteBuffer != null) {
+            likeWriteBuffer.like(postId, user.getId());
+            return;
         }
+        
+        withLockRetry(() -> transactionTemplate().executeWithoutResult(status -> {
+            if (postRepository.lockById(postId) == null) {
+                throw new EntityNotFoundException("Post not found with id: " + postId);
+            }
+            // Likes on this post are serialized by the lock, so this read can't race an insert
+            if (!postLikeRepository.existsByPostIdAndUserId(postId, user.getId())) {
+                postLikeRepository.insertLike(postId, user.getId());
+                postRepository.adjustLikesCount(postId, 1);
+            }
+        }));
     }
 
     @Override
-    @Transactional
     public void unlikePost(Long postId, User user) {
-        Post post = getPostById(postId);
-        
-        List<PostLike> updatedLikes = post.getLikes().stream()
-            .filter(like -> !like.getUser().getId().equals(user.getId()))
-            .collect(Collectors.toList());
+        if (likeWriteBuffer != null) {
+            likeWriteBuffer.unlike(postId, user.getId());
+            return;
+        }
         
-        post.setLikes(updatedLikes);
-        postRepository.save(post);
+        withLockRetry(() -> transactionTemplate().executeWithoutResult(status -> {
+            if (postRepository.lockById(postId) == null) {
+                return;
+            }
+            // Deleting only a row that exists takes no gap lock
+            if (postLikeRepository.existsByPostIdAndUserId(postId, user.getId())) {
+                int deleted = postLikeRepository.deleteByPostIdAndUserId(postId, user.getId());
+                postRepository.adjustLikesCount(postId, -deleted);
+            }
+        }));
+    }
+    
+    /**
+     * Run a like/unlike transaction again if the database timed it out waiting for a lock or
+     * chose it as a deadlock victim; the last failure is rethrown
+     */
+    private void withLockRetry(Runnable transaction) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transaction.run();
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= LOCK_RETRY_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Like transaction lost a lock (attempt {}), retrying: {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    // Programmatic so the buffered like path never opens a transaction
+    private TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager);
     }
 
     @Override
     public boolean isPostLikedByUser(Long postId, User user) {
-        Post post = getPostById(postId);
+        if (likeWriteBuffer != null) {
+            Boolean buffered = likeWriteBuffer.getBufferedState(postId, user.getId());
+            if (buffered != null) {
+                return buffered;
+            }
+        }
+        return postLikeRepository.existsByPostIdAndUserId(postId, user.getId());
+    }
+
+    @Override
+    public Set<Long> getLikedPostIds(Collection<Long> postIds, User user) {
+        if (postIds.isEmpty()) {
+            return Collections.emptySet();
+        }
         
-        return post.getLikes().stream()
-            .anyMatch(like -> like.getUser().getId().equals(user.getId()));
+        Set<Long> liked = postLikeRepository.findLikedPostIds(user.getId(), postIds);
+        if (likeWriteBuffer != null) {
+            liked = likeWriteBuffer.overlay(postIds, user.getId(), liked);
+        }
+        return liked;
     }
 
     @Override
     public long getPostLikesCount(Long postId) {
         Post post = getPostById(postId);
-        return post.getLikes().size();
+        return post.getLikesCount();
+    }
+
+    @Override
+    public List<CommentResponse> getComments(Long postId) {
+        List<CommentResponse> comments = commentRepository.findResponsesByPostId(postId);
+        
+        if (comments.isEmpty() && !postRepository.existsById(postId)) {
+            throw new EntityNotFoundException("Post not found with id: " + postId);
+        }
+        return comments;
+    }
+    
+    @Override
+    public CursorPage<CommentResponse> getCommentPage(Long postId, String cursor, Integer size) {
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        Pageable page = pageOf(size);
+        
+        Slice<CommentResponse> comments = position == null
+            ? commentRepository.findPage(postId, page)
+            : commentRepository.findPageAfter(postId, position.getCreatedAt(), position.getId(), page);
+        
+        if (position == null && comments.getContent().isEmpty() && !postRepository.existsById(postId)) {
+            throw new EntityNotFoundException("Post not found with id: " + postId);
+        }
+        
+        String nextCursor = null;
+        if (comments.hasNext()) {
+            List<CommentResponse> items = comments.getContent();
+            CommentResponse last = items.get(items.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(comments.getContent(), nextCursor);
     }
 
     @Override
     @Transactional
-    public Comment addComment(Long postId, User user, String text) {
-        Post post = getPostById(postId);
+    public CommentResponse addComment(Long postId, User user, String text) {
+        if (!postRepository.existsById(postId)) {
+            throw new EntityNotFoundException("Post not found with id: " + postId);
+        }
         
-        Comment comment = new Comment(post, user, text);
-        post.getComments().add(comment);
+        // A reference is enough to set the foreign key; the post is never loaded
+        Comment comment = new Comment(postRepository.getReferenceById(postId), user, text);
+        comment = commentRepository.save(comment);
+        postRepository.adjustCommentsCount(postId, 1);
         
-        postRepository.save(post);
-        return comment;
+        return new CommentResponse(comment);
     }
     
     @Override
     @Transactional
-    public Comment updateComment(Long postId, Long commentId, User user, String text) {
-        Post post = getPostById(postId);
-        
-        Comment comment = post.getComments().stream()
-            .filter(c -> c.getId().equals(commentId))
-            .findFirst()
-            .orElseThrow(() -> new EntityNotFoundException("Comment not found with id: " + commentId));
+    public CommentResponse updateComment(Long postId, Long commentId, User user, String text, Long expectedVersion) {
+        CommentWriteState state = getCommentWriteState(postId, commentId);
         
         // Check if the user is the owner of the comment
-        if (!comment.getUser().getId().equals(user.getId())) {
+        if (!state.getAuthorId().equals(user.getId())) {
             throw new IllegalStateException("You are not authorized to update this comment");
         }
         
-        // Explicitly update the comment text and save
-        try {
-            comment.setText(text);
-            // Force an update timestamp
-            comment.setUpdatedAt(new Date());
-            // Save the post which should cascade to the comment
-            post = postRepository.saveAndFlush(post);
-            
-            // Get the updated comment from the refreshed post
-            Comment updatedComment = post.getComments().stream()
-                .filter(c -> c.getId().equals(commentId))
-                .findFirst()
-                .orElseThrow(() -> new EntityNotFoundException("Comment not found after update"));
-                
-            return updatedComment;
-        } catch (Exception e) {
-            System.err.println("Error updating comment: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
+        // Without a client-supplied version, still guard against an edit racing this one
+        long version = expectedVersion != null ? expectedVersion : state.getVersion();
+        if (commentRepository.updateText(commentId, postId, text, new Date(), version) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Comment.class, commentId);
         }
+        
+        return commentRepository.findResponseById(commentId)
+            .orElseThrow(() -> new EntityNotFoundException("Comment not found after update"));
     }
     
     @Override
     @Transactional
-    public void deleteComment(Long postId, Long commentId, User user) {
-        Post post = getPostById(postId);
-        
-        Comment comment = post.getComments().stream()
-            .filter(c -> c.getId().equals(commentId))
-            .findFirst()
-            .orElseThrow(() -> new EntityNotFoundException("Comment not found with id: " + commentId));
+    public void deleteComment(Long postId, Long commentId, User user, Long expectedVersion) {
+        CommentWriteState state = getCommentWriteState(postId, commentId);
         
         // Check if the user is the owner of the comment or the post
-        if (!comment.getUser().getId().equals(user.getId()) && !post.getUser().getId().equals(user.getId())) {
+        if (!state.getAuthorId().equals(user.getId()) && !state.getPostAuthorId().equals(user.getId())) {
             throw new IllegalStateException("You are not authorized to delete this comment");
         }
         
-        post.getComments().remove(comment);
-        postRepository.save(post);
+        long version = expectedVersion != null ? expectedVersion : state.getVersion();
+        if (commentRepository.deleteByIdAndPostId(commentId, postId, version) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Comment.class, commentId);
+        }
+        postRepository.adjustCommentsCount(postId, -1);
+    }
+    
+    private CommentWriteState getCommentWriteState(Long postId, Long commentId) {
+        return commentRepository.findWriteState(commentId, postId)
+            .orElseThrow(() -> new EntityNotFoundException("Comment not found with id: " + commentId));
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,314 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.UploadSession;
+import com.gym.auth.model.User;
+import com.gym.auth.model.dto.StoredFile;
+import com.gym.auth.repository.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable video uploads: init, PUT chunks at byte offsets, finalize, then attach to a post.
+ *
+ * Chunks are written with positioned FileChannel writes into a staging file, so a retried or
+ * overlapping chunk simply rewrites the same bytes. Whatever arrived before a dropped
+ * connection is kept, and the client resumes from the offset reported by the status call.
+ * Sessions expire after a period without activity and are swept together with their files.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumableUploadService.class);
+
+    private static final String VIDEO_DIRECTORY = "videos";
+    private static final String STAGING_DIRECTORY = ".resumable";
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    @Autowired
+    private UploadAdmission uploadAdmission;
+
+    @Autowired
+    private MediaTypeDetector mediaTypeDetector;
+
+    @Value("${app.uploads.stream.max-video-bytes:20971520}")
+    private long maxVideoBytes;
+
+    @Value("${app.uploads.resumable.max-chunk-bytes:8388608}")
+    private long maxChunkBytes;
+
+    @Value("${app.uploads.resumable.max-open-per-user:5}")
+    private long maxOpenPerUser;
+
+    // Idle time after which an unfinished or unattached upload is discarded
+    @Value("${app.uploads.resumable.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    /**
+     * The client tried to write past the bytes received so far; it should resume from currentOffset
+     */
+    public static class OffsetMismatchException extends IllegalStateException {
+        private final long currentOffset;
+
+        public OffsetMismatchException(String message, long currentOffset) {
+            super(message);
+            this.currentOffset = currentOffset;
+        }
+
+        public long getCurrentOffset() {
+            return currentOffset;
+        }
+    }
+
+    /**
+     * The chunk would run past the declared upload size or the per-request chunk limit
+     */
+    public static class ChunkTooLargeException extends IllegalArgumentException {
+        public ChunkTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The offset can never be valid, whatever has been received so far
+     */
+    public static class InvalidOffsetException extends IllegalArgumentException {
+        public InvalidOffsetException(String message) {
+            super(message);
+        }
+    }
+
+    public UploadSession init(User user, String fileName, String contentType, long size) throws IOException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Upload size must be positive");
+        }
+        if (size > maxVideoBytes) {
+            throw new IllegalArgumentException("Video exceeds " + maxVideoBytes + " bytes");
+        }
+        if (uploadSessionRepository.countByUserIdAndStatus(user.getId(), UploadSession.Status.OPEN) >= maxOpenPerUser) {
+            throw new IllegalArgumentException("Too many unfinished uploads; finish or cancel one first");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(user.getId());
+        session.setFileName(fileName);
+        session.setContentType(contentType);
+        session.setTotalSize(size);
+        session.setReceivedBytes(0);
+        session.setStatus(UploadSession.Status.OPEN);
+        session.setCreatedAt(new Date());
+        session.setExpiresAt(nextExpiry());
+
+        Path staging = stagingPath(session.getId());
+        Files.createDirectories(staging.getParent());
+        Files.createFile(staging);
+        try {
+            return uploadSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(staging);
+            throw e;
+        }
+    }
+
+    public UploadSession getSession(String uploadId, User user) {
+        return uploadSessionRepository.findByIdAndUserId(uploadId, user.getId())
+                .orElseThrow(() -> new EntityNotFoundException("Upload not found"));
+    }
+
+    /**
+     * Write the request body at the given offset. Returns the new contiguous offset. Bytes that
+     * reached the disk before the connection dropped are still recorded.
+     */
+    public long writeChunk(String uploadId, User user, long offset, InputStream body) throws IOException {
+        UploadSession session = getSession(uploadId, user);
+        if (session.getStatus() != UploadSession.Status.OPEN) {
+            throw new IllegalStateException("Upload is already " + session.getStatus().name().toLowerCase());
+        }
+        if (offset < 0) {
+            throw new InvalidOffsetException("Offset must not be negative");
+        }
+        if (offset > session.getReceivedBytes()) {
+            throw new OffsetMismatchException("Chunk must start at or before offset " + session.getReceivedBytes(),
+                    session.getReceivedBytes());
+        }
+
+        long[] position = {offset};
+        // Admitted before any of the body is read, so a rejected chunk costs the client nothing
+        try (UploadAdmission.Permit permit = uploadAdmission.admit();
+             FileChannel channel = FileChannel.open(stagingPath(uploadId), StandardOpenOption.WRITE)) {
+            uploadAdmission.copy(body, (chunk, n) -> {
+                if (position[0] + n > session.getTotalSize()) {
+                    throw new ChunkTooLargeException("Chunk extends past the declared size of " + session.getTotalSize() + " bytes");
+                }
+                if (position[0] + n - offset > maxChunkBytes) {
+                    throw new ChunkTooLargeException("Chunk exceeds " + maxChunkBytes + " bytes");
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, n);
+                while (buffer.hasRemaining()) {
+                    position[0] += channel.write(buffer, position[0]);
+                }
+            });
+        } finally {
+            if (position[0] > offset) {
+                uploadSessionRepository.advanceReceived(uploadId, position[0], nextExpiry());
+            }
+        }
+        return Math.max(session.getReceivedBytes(), position[0]);
+    }
+
+    /**
+     * Move a fully received upload into video storage. If expectedSha256 is given, the uploaded
+     * bytes must match it or the upload is discarded.
+     */
+    public UploadSession finalizeUpload(String uploadId, User user, String expectedSha256) {
+        UploadSession session = getSession(uploadId, user);
+        if (session.getStatus() == UploadSession.Status.COMPLETE) {
+            // Repeated finalize after a lost response
+            return session;
+        }
+        if (session.getReceivedBytes() < session.getTotalSize()) {
+            throw new OffsetMismatchException("Upload incomplete: " + session.getReceivedBytes() + " of "
+                    + session.getTotalSize() + " bytes received", session.getReceivedBytes());
+        }
+        if (uploadSessionRepository.transition(uploadId, UploadSession.Status.OPEN, UploadSession.Status.FINALIZING) == 0) {
+            throw new IllegalStateException("Upload is already being finalized");
+        }
+
+        StoredFile stored;
+        try {
+            stored = fileStorageService.store(stagingPath(uploadId), session.getFileName(),
+                    session.getContentType(), VIDEO_DIRECTORY);
+        } catch (FileStorageService.RejectedUploadException e) {
+            // Retrying can't help, so drop the upload rather than leave it open
+            try {
+                Files.deleteIfExists(stagingPath(uploadId));
+            } catch (IOException io) {
+                logger.warn("Could not delete rejected upload {}: {}", uploadId, io.getMessage());
+            }
+            uploadSessionRepository.deleteById(uploadId);
+            throw e;
+        } catch (RuntimeException e) {
+            uploadSessionRepository.transition(uploadId, UploadSession.Status.FINALIZING, UploadSession.Status.OPEN);
+            throw e;
+        }
+
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(stored.getReceivedHash())) {
+            fileStorageService.deleteFile(VIDEO_DIRECTORY + "/" + stored.getFileName());
+            uploadSessionRepository.deleteById(uploadId);
+            throw new IllegalArgumentException("Checksum mismatch; the upload was discarded");
+        }
+
+        // Keep the type detected from the bytes, not the one declared at init
+        uploadSessionRepository.markComplete(uploadId, stored.getFileName(), stored.getContentHash(),
+                stored.getContentType(), nextExpiry());
+        logger.info("Finalized resumable upload {} as {} ({} bytes)", uploadId, stored.getFileName(), stored.getSize());
+        return getSession(uploadId, user);
+    }
+
+    public void abort(String uploadId, User user) throws IOException {
+        UploadSession session = getSession(uploadId, user);
+        if (uploadSessionRepository.transition(uploadId, UploadSession.Status.OPEN, UploadSession.Status.FINALIZING) > 0) {
+            Files.deleteIfExists(stagingPath(uploadId));
+            uploadSessionRepository.deleteById(uploadId);
+        } else if (session.getStatus() == UploadSession.Status.COMPLETE
+                && uploadSessionRepository.transition(uploadId, UploadSession.Status.COMPLETE, UploadSession.Status.FINALIZING) > 0) {
+            fileStorageService.deleteFile(VIDEO_DIRECTORY + "/" + session.getStoredFileName());
+            uploadSessionRepository.deleteById(uploadId);
+        } else {
+            throw new IllegalStateException("Upload can no longer be cancelled");
+        }
+    }
+
+    /**
+     * Take a finalized upload for a new post. Runs in the caller's transaction, so if the post
+     * is not created the upload stays available.
+     */
+    public StoredFile claim(String uploadId, User user) {
+        if (uploadSessionRepository.markAttached(uploadId, user.getId(), new Date()) == 0) {
+            throw new IllegalArgumentException("Video upload " + uploadId + " is not finalized or has expired");
+        }
+        UploadSession session = getSession(uploadId, user);
+        // Stream details aren't kept on the session; reading them again only touches the moov box
+        MediaTypeDetector.Probe probe;
+        try {
+            probe = mediaTypeDetector.probe(mediaPathResolver.resolve(VIDEO_DIRECTORY, session.getStoredFileName()));
+        } catch (IOException e) {
+            probe = null;
+        }
+        if (probe == null) {
+            return new StoredFile(session.getStoredFileName(), session.getContentHash(), session.getTotalSize(),
+                    session.getContentType());
+        }
+        return new StoredFile(session.getStoredFileName(), session.getContentHash(), session.getTotalSize(),
+                session.getContentType(), probe.getWidth(), probe.getHeight(), probe.getDurationMillis(),
+                probe.getBitrate(), probe.getCodecs());
+    }
+
+    @Scheduled(initialDelayString = "${app.uploads.resumable.sweep-interval-ms:900000}",
+               fixedDelayString = "${app.uploads.resumable.sweep-interval-ms:900000}")
+    public void sweepExpired() {
+        int removed = 0;
+        List<UploadSession> batch;
+        int removedInBatch;
+        do {
+            batch = uploadSessionRepository.findSweepable(new Date(), PageRequest.of(0, SWEEP_BATCH_SIZE));
+            removedInBatch = 0;
+            for (UploadSession session : batch) {
+                // Only the sweeper that wins the delete cleans up the files
+                if (uploadSessionRepository.deleteIfSweepable(session.getId(), session.getStatus(), new Date()) == 0) {
+                    continue;
+                }
+                removedInBatch++;
+                try {
+                    if (session.getStatus() == UploadSession.Status.COMPLETE) {
+                        fileStorageService.deleteFile(VIDEO_DIRECTORY + "/" + session.getStoredFileName());
+                    } else if (session.getStatus() != UploadSession.Status.ATTACHED) {
+                        Files.deleteIfExists(stagingPath(session.getId()));
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not remove files of expired upload {}: {}", session.getId(), e.getMessage());
+                }
+            }
+            removed += removedInBatch;
+        } while (batch.size() == SWEEP_BATCH_SIZE && removedInBatch > 0);
+
+        if (removed > 0) {
+            logger.info("Swept {} finished or expired upload sessions", removed);
+        }
+    }
+
+    private Path stagingPath(String uploadId) {
+        // Ids are generated here, but never let one that came from a URL leave the staging directory
+        return mediaPathResolver.root().resolve(STAGING_DIRECTORY).resolve(UUID.fromString(uploadId) + ".part");
+    }
+
+    private Date nextExpiry() {
+        return new Date(System.currentTimeMillis() + ttlMinutes * 60_000);
+    }
+}
@@ -0,0 +1,368 @@
+package com.gym.auth.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Cold tier in an S3-compatible object store (AWS S3, MinIO, Ceph RGW and the like).
+ *
+ * Talks plain HTTP with path-style URLs and AWS Signature Version 4, so any endpoint that
+ * speaks the S3 object API works, including a local stand-in for development. Only enabled
+ * when file.storage.s3.bucket is set.
+ */
+@Component
+@ConditionalOnProperty(name = "file.storage.s3.bucket")
+public class S3BlobStore implements BlobStore {
+
+    public static final String NAME = "s3";
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String SERVICE = "s3";
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+    private static final String EMPTY_PAYLOAD_SHA256 =
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${file.storage.s3.endpoint:https://s3.amazonaws.com}")
+    private String endpoint;
+
+    @Value("${file.storage.s3.region:us-east-1}")
+    private String region;
+
+    @Value("${file.storage.s3.bucket}")
+    private String bucket;
+
+    // Prepended to every key, so several environments can share a bucket
+    @Value("${file.storage.s3.prefix:}")
+    private String prefix;
+
+    @Value("${file.storage.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${file.storage.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${file.storage.s3.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${file.storage.s3.read-timeout-ms:60000}")
+    private int readTimeoutMs;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        HttpURLConnection connection = open("HEAD", key, EMPTY_PAYLOAD_SHA256);
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return false;
+            }
+            check(connection, status, key);
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        // Signing the real payload hash lets the store reject a corrupted upload
+        HttpURLConnection connection = open("PUT", key, sha256Hex(source));
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(size);
+            try (OutputStream out = connection.getOutputStream()) {
+                Files.copy(source, out);
+            }
+            check(connection, connection.getResponseCode(), key);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void get(String key, Path target) throws IOException {
+        HttpURLConnection connection = open("GET", key, EMPTY_PAYLOAD_SHA256);
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new NoSuchFileException(key);
+            }
+            check(connection, status, key);
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        HttpURLConnection connection = open("DELETE", key, EMPTY_PAYLOAD_SHA256);
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                return false;
+            }
+            check(connection, status, key);
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * ListObjectsV2 over the directory's prefix, a page at a time
+     */
+    @Override
+    public void list(String directory, BlobVisitor visitor) throws IOException {
+        String listPrefix = prefix + directory + "/";
+        String continuationToken = null;
+        do {
+            Map<String, String> query = new TreeMap<>();
+            query.put("list-type", "2");
+            query.put("prefix", listPrefix);
+            if (continuationToken != null) {
+                query.put("continuation-token", continuationToken);
+            }
+            StringBuilder queryString = new StringBuilder();
+            for (Map.Entry<String, String> parameter : query.entrySet()) {
+                if (queryString.length() > 0) {
+                    queryString.append('&');
+                }
+                queryString.append(encode(parameter.getKey(), false)).append('=').append(encode(parameter.getValue(), false));
+            }
+
+            HttpURLConnection connection = open("GET", "/" + encodePath(bucket), queryString.toString(),
+                    EMPTY_PAYLOAD_SHA256);
+            try {
+                check(connection, connection.getResponseCode(), listPrefix);
+                try (InputStream in = connection.getInputStream()) {
+                    continuationToken = readListPage(in, listPrefix, directory, visitor);
+                }
+            } finally {
+                connection.disconnect();
+            }
+        } while (continuationToken != null);
+    }
+
+    /**
+     * Visit the objects of one ListObjectsV2 response; returns the token of the next page, if any
+     */
+    private static String readListPage(InputStream in, String listPrefix, String directory, BlobVisitor visitor)
+            throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        String nextToken = null;
+        boolean truncated = false;
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String key = null;
+            long lastModified = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT && "Contents".equals(reader.getLocalName())) {
+                    if (key != null && key.startsWith(listPrefix)) {
+                        visitor.visit(directory + "/" + key.substring(listPrefix.length()), lastModified);
+                    }
+                    key = null;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "Key":
+                        key = reader.getElementText();
+                        break;
+                    case "LastModified":
+                        lastModified = Instant.parse(reader.getElementText()).toEpochMilli();
+                        break;
+                    case "IsTruncated":
+                        truncated = Boolean.parseBoolean(reader.getElementText());
+                        break;
+                    case "NextContinuationToken":
+                        nextToken = reader.getElementText();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException | DateTimeParseException e) {
+            throw new IOException("Unreadable object listing: " + e.getMessage(), e);
+        }
+        return truncated ? nextToken : null;
+    }
+
+    private HttpURLConnection open(String method, String key, String payloadSha256) throws IOException {
+        return open(method, "/" + encodePath(bucket) + "/" + encodePath(prefix + key), "", payloadSha256);
+    }
+
+    private HttpURLConnection open(String method, String canonicalUri, String canonicalQuery, String payloadSha256)
+            throws IOException {
+        URL url = new URL(endpoint.replaceAll("/+$", "") + canonicalUri
+                + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+        String host = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+
+        Date now = new Date();
+        String amzDate = format("yyyyMMdd'T'HHmmss'Z'", now);
+        String dateStamp = format("yyyyMMdd", now);
+
+        String canonicalRequest = method + "\n"
+                + canonicalUri + "\n"
+                + canonicalQuery + "\n"
+                + "host:" + host + "\n"
+                + "x-amz-content-sha256:" + payloadSha256 + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + SIGNED_HEADERS + "\n"
+                + payloadSha256;
+        String scope = dateStamp + "/" + region + "/" + SERVICE + "/aws4_request";
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + toHex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), dateStamp);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, SERVICE);
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = toHex(hmac(signingKey, stringToSign));
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        connection.setRequestProperty("x-amz-date", amzDate);
+        connection.setRequestProperty("x-amz-content-sha256", payloadSha256);
+        connection.setRequestProperty("Authorization", ALGORITHM
+                + " Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + SIGNED_HEADERS
+                + ", Signature=" + signature);
+        return connection;
+    }
+
+    private static void check(HttpURLConnection connection, int status, String key) throws IOException {
+        if (status / 100 == 2) {
+            return;
+        }
+        String body = "";
+        InputStream error = connection.getErrorStream();
+        if (error != null) {
+            try (InputStream in = error) {
+                byte[] head = new byte[512];
+                int length = 0;
+                int n;
+                while (length < head.length && (n = in.read(head, length, head.length - length)) != -1) {
+                    length += n;
+                }
+                body = new String(head, 0, length, StandardCharsets.UTF_8);
+            }
+        }
+        throw new IOException("Object store returned " + status + " for " + key + ": " + body);
+    }
+
+    /**
+     * RFC 3986 encoding of each path segment, as SigV4 expects for S3
+     */
+    private static String encodePath(String path) {
+        return encode(path, true);
+    }
+
+    /**
+     * RFC 3986 encoding; query parameters encode the slash too
+     */
+    private static String encode(String value, boolean keepSlash) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (keepSlash && c == '/')) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static String format(String pattern, Date date) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
+    private static String sha256Hex(Path file) throws IOException {
+        MessageDigest digest = sha256Digest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] chunk = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                digest.update(chunk, 0, n);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return sha256Digest().digest(data);
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
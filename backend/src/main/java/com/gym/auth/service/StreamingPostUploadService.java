@@ -0,0 +1,122 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.Post;
+import com.gym.auth.model.User;
+import com.gym.auth.model.dto.StoredFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Creates a post straight from a multipart request body. Each file part is streamed into
+ * storage as it is parsed, so media bytes hit the disk once instead of being spooled to a
+ * container temp file and copied again. Size limits are enforced while the bytes arrive.
+ */
+@Service
+public class StreamingPostUploadService {
+
+    private static final Logger logger = Logger.getLogger(StreamingPostUploadService.class.getName());
+
+    private static final int MAX_IMAGES = 3;
+    private static final int MAX_TEXT_BYTES = 64 * 1024;
+    private static final int MAX_UPLOAD_ID_BYTES = 64;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PostService postService;
+
+    @Value("${app.uploads.stream.max-image-bytes:20971520}")
+    private long maxImageBytes;
+
+    @Value("${app.uploads.stream.max-video-bytes:20971520}")
+    private long maxVideoBytes;
+
+    @Value("${app.uploads.stream.max-request-bytes:26214400}")
+    private long maxRequestBytes;
+
+    public Post createPost(HttpServletRequest request, User user) throws IOException {
+        String boundary = MultipartStreamReader.boundaryOf(request.getContentType());
+        if (boundary == null) {
+            throw new MultipartStreamReader.MalformedMultipartException("Expected multipart/form-data with a boundary");
+        }
+        if (request.getContentLengthLong() > maxRequestBytes) {
+            throw new MultipartStreamReader.LimitExceededException("Request exceeds " + maxRequestBytes + " bytes");
+        }
+
+        MultipartStreamReader reader = new MultipartStreamReader(request.getInputStream(), boundary, maxRequestBytes);
+        String text = null;
+        List<StoredFile> images = new ArrayList<>();
+        StoredFile video = null;
+        String videoUploadId = null;
+        // directory/name of everything written so far, for cleanup on failure
+        List<String> stored = new ArrayList<>();
+
+        try {
+            MultipartStreamReader.Part part;
+            while ((part = reader.next()) != null) {
+                String name = part.getName();
+                boolean isFile = part.getFileName() != null && !part.getFileName().isEmpty();
+
+                if ("text".equals(name) && !isFile) {
+                    text = part.readString(MAX_TEXT_BYTES);
+                } else if ("videoUploadId".equals(name) && !isFile) {
+                    videoUploadId = part.readString(MAX_UPLOAD_ID_BYTES).trim();
+                } else if ("images".equals(name) && isFile && images.size() < MAX_IMAGES) {
+                    StoredFile image = store(part, "images", maxImageBytes, stored);
+                    if (image != null) {
+                        images.add(image);
+                    }
+                } else if ("video".equals(name) && isFile && video == null) {
+                    video = store(part, "videos", maxVideoBytes, stored);
+                }
+                // Anything else is skipped when the reader moves on
+            }
+
+            if (videoUploadId != null && !videoUploadId.isEmpty()) {
+                if (video != null) {
+                    throw new IllegalArgumentException("Send either a video or a videoUploadId, not both");
+                }
+                return postService.createPost(text, user, images, videoUploadId);
+            }
+            return postService.createPost(text, user, images, video);
+        } catch (IOException | RuntimeException e) {
+            // Nothing will reference what was already written
+            for (String path : stored) {
+                fileStorageService.deleteFile(path);
+            }
+            throw e;
+        }
+    }
+
+    private StoredFile store(MultipartStreamReader.Part part, String directory, long maxBytes,
+                             List<String> stored) throws IOException {
+        InputStream body = part.getInputStream(maxBytes);
+        StoredFile file;
+        try {
+            file = fileStorageService.store(body, part.getFileName(), part.getContentType(), directory);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        String path = directory + "/" + file.getFileName();
+        stored.add(path);
+        logger.info("Streamed " + directory + " part to storage: " + file.getFileName() + " (" + file.getSize() + " bytes)");
+
+        // Browsers send an empty part for an untouched file input; it is not an upload
+        if (file.getSize() == 0) {
+            stored.remove(path);
+            fileStorageService.deleteFile(path);
+            return null;
+        }
+        return file;
+    }
+}
@@ -0,0 +1,224 @@
+package com.gym.auth.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for uploads, so a burst of video posts can't saturate the disk and tie
+ * up every request thread.
+ *
+ * Each upload request is admitted once, before any of its body is read: at most
+ * max-concurrent uploads are received at a time, others wait in a bounded queue for up to
+ * max-wait-ms and are then turned away with {@link UploadRejectedException}, which the
+ * controllers answer with 503 and Retry-After. A full queue is rejected straight away. So
+ * a rejected client hasn't sent its body yet, and uploads hold at most max-concurrent +
+ * max-queued request threads.
+ *
+ * Admitted uploads share a token-bucket byte budget, paid per write buffer, so total write
+ * throughput stays under bytes-per-second. Only admitted uploads draw on it, so no write
+ * waits longer than max-concurrent buffers take at that rate.
+ */
+@Component
+public class UploadAdmission {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadAdmission.class);
+
+    @Value("${app.uploads.admission.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${app.uploads.admission.max-queued:32}")
+    private int maxQueued;
+
+    @Value("${app.uploads.admission.max-wait-ms:10000}")
+    private long maxWaitMs;
+
+    @Value("${app.uploads.admission.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    // 0 means no byte budget
+    @Value("${app.uploads.admission.bytes-per-second:52428800}")
+    private long bytesPerSecond;
+
+    // Body bytes read from the client before each disk write
+    @Value("${app.uploads.admission.write-buffer-bytes:262144}")
+    private int writeBufferBytes;
+
+    private Semaphore permits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+    private final AtomicLong maxObservedWaitMs = new AtomicLong();
+    private final AtomicLong throttledMs = new AtomicLong();
+
+    // Token bucket, guarded by bucketLock; holds at most one second of budget
+    private final Object bucketLock = new Object();
+    private double tokens;
+    private long lastRefillNanos;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        tokens = bytesPerSecond;
+        lastRefillNanos = System.nanoTime();
+        logger.info("Upload admission: {} concurrent uploads, {} queued, byte budget {} B/s",
+                maxConcurrent, maxQueued, bytesPerSecond > 0 ? bytesPerSecond : "unlimited");
+    }
+
+    public static class UploadRejectedException extends RuntimeException {
+        private final int retryAfterSeconds;
+
+        public UploadRejectedException(String message, int retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    /**
+     * A slot to receive one upload; close it when the body has been read and written
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Receives each buffer of an upload, to write it to disk
+     */
+    public interface BufferWriter {
+        void write(byte[] buffer, int length) throws IOException;
+    }
+
+    /**
+     * Copy an admitted upload body to disk, one buffer at a time, each paid for from the byte
+     * budget before it is written. If the client connection fails, what was already read is
+     * still written before the error is rethrown. Returns the number of bytes copied.
+     */
+    public long copy(InputStream in, BufferWriter writer) throws IOException {
+        byte[] buffer = new byte[Math.max(8192, writeBufferBytes)];
+        long total = 0;
+        while (true) {
+            int length = 0;
+            try {
+                int n;
+                while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) != -1) {
+                    length += n;
+                }
+            } catch (IOException e) {
+                if (length > 0) {
+                    write(buffer, length, writer);
+                }
+                throw e;
+            }
+            if (length == 0) {
+                return total;
+            }
+            write(buffer, length, writer);
+            total += length;
+        }
+    }
+
+    private void write(byte[] buffer, int length, BufferWriter writer) throws IOException {
+        if (bytesPerSecond > 0) {
+            consume(length);
+        }
+        writer.write(buffer, length);
+    }
+
+    /**
+     * Admit one upload before its body is read, waiting in the queue if every slot is taken.
+     * Throws {@link UploadRejectedException} if the queue is full or the wait times out.
+     */
+    public Permit admit() {
+        if (permits.tryAcquire()) {
+            admitted.incrementAndGet();
+            return permits::release;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejectedQueueFull.incrementAndGet();
+            throw new UploadRejectedException("Too many uploads in progress, try again shortly", retryAfterSeconds);
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            queued.decrementAndGet();
+        }
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        waits.incrementAndGet();
+        totalWaitMs.addAndGet(waitedMs);
+        maxObservedWaitMs.accumulateAndGet(waitedMs, Math::max);
+
+        if (!acquired) {
+            rejectedTimeout.incrementAndGet();
+            throw new UploadRejectedException("Upload queue is busy, try again shortly", retryAfterSeconds);
+        }
+        admitted.incrementAndGet();
+        return permits::release;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long waitCount = waits.get();
+        stats.put("maxConcurrent", maxConcurrent);
+        // Uploads being received right now
+        stats.put("inFlight", Math.max(0, maxConcurrent - permits.availablePermits()));
+        stats.put("queueDepth", queued.get());
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedQueueFull", rejectedQueueFull.get());
+        stats.put("rejectedTimeout", rejectedTimeout.get());
+        // Over uploads that had to queue
+        stats.put("avgWaitMs", waitCount == 0 ? 0.0 : (double) totalWaitMs.get() / waitCount);
+        stats.put("maxWaitMs", maxObservedWaitMs.get());
+        stats.put("bytesPerSecond", bytesPerSecond);
+        stats.put("throttledMs", throttledMs.get());
+        return stats;
+    }
+
+    private void consume(long bytes) throws InterruptedIOException {
+        long sleepNanos;
+        synchronized (bucketLock) {
+            long now = System.nanoTime();
+            tokens = Math.min(bytesPerSecond, tokens + (now - lastRefillNanos) * bytesPerSecond / 1e9);
+            lastRefillNanos = now;
+            tokens -= bytes;
+            // In debt: wait until the budget has been paid back
+            sleepNanos = tokens < 0 ? (long) (-tokens * 1e9 / bytesPerSecond) : 0;
+        }
+        if (sleepNanos > 0) {
+            throttledMs.addAndGet(TimeUnit.NANOSECONDS.toMillis(sleepNanos));
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.gym.auth.service;
+
+import com.gym.auth.model.ImageVariant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves files left in the old flat upload directories into the sharded layout, in the
+ * background while the application keeps serving.
+ *
+ * Each file is moved with a single atomic rename, so readers see it either at the old path
+ * or the new one and open streams are unaffected; {@link MediaPathResolver} looks in both.
+ * Directories are read through a DirectoryStream rather than listed, so memory stays flat
+ * however many files are waiting. Safe to run repeatedly; a crash just leaves work for the next run.
+ */
+@Component
+public class UploadReshardService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadReshardService.class);
+
+    @Autowired
+    private MediaPathResolver mediaPathResolver;
+
+    @Value("${file.storage.reshard.enabled:true}")
+    private boolean enabled;
+
+    // Pause after each batch so the migration doesn't compete with request I/O
+    @Value("${file.storage.reshard.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.storage.reshard.pause-ms:50}")
+    private long pauseMs;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (!enabled || !mediaPathResolver.isSharded()) {
+            return;
+        }
+        Thread worker = new Thread(this::reshardAll, "upload-reshard");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Reshard every media directory; returns the number of files moved
+     */
+    public long reshardAll() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Upload reshard already running");
+            return 0;
+        }
+        try {
+            List<String> directories = new ArrayList<>();
+            directories.add("images");
+            directories.add("videos");
+            for (ImageVariant variant : ImageVariant.values()) {
+                directories.add(ImageVariantService.variantDirectory(variant));
+            }
+
+            long moved = 0;
+            for (String directory : directories) {
+                moved += reshard(directory);
+            }
+            if (moved > 0) {
+                logger.info("Upload reshard finished, moved {} files", moved);
+            }
+            return moved;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long reshard(String directory) {
+        Path flatDir = mediaPathResolver.root().resolve(directory);
+        if (!Files.isDirectory(flatDir)) {
+            return 0;
+        }
+
+        long moved = 0;
+        int inBatch = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(flatDir, Files::isRegularFile)) {
+            for (Path source : entries) {
+                String name = source.getFileName().toString();
+                // In-progress uploads and renders are renamed into place by their writers
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                if (move(source, mediaPathResolver.shardedPath(directory, name))) {
+                    moved++;
+                }
+                if (++inBatch >= batchSize) {
+                    inBatch = 0;
+                    Thread.sleep(pauseMs);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Upload reshard of {} stopped: {}", directory, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return moved;
+    }
+
+    private boolean move(Path source, Path target) {
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // Same name already sharded (a content-addressed duplicate); the flat copy is redundant
+            try {
+                Files.deleteIfExists(source);
+            } catch (IOException ignored) {
+                // picked up again on the next run
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted while we were walking the directory
+        } catch (IOException e) {
+            logger.warn("Could not reshard {}: {}", source, e.getMessage());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,171 @@
+package com.gym.auth.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the duration of a WebM (Matroska) file from its Segment Info element.
+ *
+ * Only element headers are read on the way there, and the walk stops at the first Cluster:
+ * Info comes before the media data in any file a browser can play. Files without a usable
+ * Duration, such as live recordings that were never finalized, give null.
+ */
+public final class WebmParser {
+
+    private static final long EBML = 0x1A45DFA3L;
+    private static final long SEGMENT = 0x18538067L;
+    private static final long INFO = 0x1549A966L;
+    private static final long CLUSTER = 0x1F43B675L;
+    private static final long TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long DURATION = 0x4489L;
+
+    // Segment children looked at before giving up on finding Info
+    private static final int MAX_ELEMENTS = 64;
+    private static final long UNKNOWN_SIZE = -1;
+
+    private WebmParser() {
+    }
+
+    /**
+     * Duration in milliseconds, or null if the file doesn't state one
+     */
+    public static Long durationMillis(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            Element header = readElement(channel, 0, fileSize);
+            if (header == null || header.id != EBML || header.size == UNKNOWN_SIZE) {
+                return null;
+            }
+            Element segment = readElement(channel, header.end(), fileSize);
+            if (segment == null || segment.id != SEGMENT) {
+                return null;
+            }
+            long segmentEnd = segment.size == UNKNOWN_SIZE ? fileSize : Math.min(segment.end(), fileSize);
+
+            long position = segment.dataStart;
+            for (int i = 0; i < MAX_ELEMENTS && position < segmentEnd; i++) {
+                Element element = readElement(channel, position, segmentEnd);
+                if (element == null || element.id == CLUSTER || element.size == UNKNOWN_SIZE) {
+                    return null;
+                }
+                if (element.id == INFO) {
+                    return infoDuration(channel, element, segmentEnd);
+                }
+                position = element.end();
+            }
+            return null;
+        }
+    }
+
+    private static Long infoDuration(FileChannel channel, Element info, long limit) throws IOException {
+        long end = Math.min(info.end(), limit);
+        long timecodeScale = 1_000_000;
+        Double duration = null;
+
+        long position = info.dataStart;
+        while (position < end) {
+            Element element = readElement(channel, position, end);
+            if (element == null || element.size == UNKNOWN_SIZE || element.end() > end) {
+                return null;
+            }
+            if (element.id == TIMECODE_SCALE && element.size >= 1 && element.size <= 8) {
+                timecodeScale = unsigned(read(channel, element.dataStart, (int) element.size));
+            } else if (element.id == DURATION && element.size == 4) {
+                duration = (double) read(channel, element.dataStart, 4).getFloat();
+            } else if (element.id == DURATION && element.size == 8) {
+                duration = read(channel, element.dataStart, 8).getDouble();
+            }
+            position = element.end();
+        }
+        if (duration == null || duration.isNaN() || duration.isInfinite() || duration < 0 || timecodeScale <= 0) {
+            return null;
+        }
+        // Duration is in timecode ticks; TimecodeScale is nanoseconds per tick
+        return Math.round(duration * timecodeScale / 1_000_000.0);
+    }
+
+    private static class Element {
+        final long id;
+        final long dataStart;
+        final long size;
+
+        Element(long id, long dataStart, long size) {
+            this.id = id;
+            this.dataStart = dataStart;
+            this.size = size;
+        }
+
+        long end() {
+            return dataStart + size;
+        }
+    }
+
+    /**
+     * Element header at position: a 1-4 byte id and a 1-8 byte size. Null if it doesn't fit before limit.
+     */
+    private static Element readElement(FileChannel channel, long position, long limit) throws IOException {
+        if (position + 2 > limit) {
+            return null;
+        }
+        ByteBuffer head = read(channel, position, (int) Math.min(12, limit - position));
+        int idLength = vintLength(head.get(0) & 0xFF);
+        if (idLength == 0 || idLength > 4 || idLength >= head.limit()) {
+            return null;
+        }
+        long id = 0;
+        for (int i = 0; i < idLength; i++) {
+            id = (id << 8) | (head.get(i) & 0xFF);
+        }
+
+        int first = head.get(idLength) & 0xFF;
+        int sizeLength = vintLength(first);
+        if (sizeLength == 0 || idLength + sizeLength > head.limit()) {
+            return null;
+        }
+        // The length marker bit is dropped from the value; all ones means "unknown"
+        long size = first & (0xFF >> sizeLength);
+        boolean allOnes = size == (0xFF >> sizeLength);
+        for (int i = 1; i < sizeLength; i++) {
+            int b = head.get(idLength + i) & 0xFF;
+            size = (size << 8) | b;
+            allOnes &= b == 0xFF;
+        }
+        long dataStart = position + idLength + sizeLength;
+        if (allOnes) {
+            return new Element(id, dataStart, UNKNOWN_SIZE);
+        }
+        if (size > limit - dataStart) {
+            return null;
+        }
+        return new Element(id, dataStart, size);
+    }
+
+    /**
+     * Length of a variable-length integer from its first byte: one more than its leading zero bits
+     */
+    private static int vintLength(int first) {
+        return first == 0 ? 0 : Integer.numberOfLeadingZeros(first) - 23;
+    }
+
+    private static long unsigned(ByteBuffer buffer) {
+        long value = 0;
+        while (buffer.hasRemaining()) {
+            value = (value << 8) | (buffer.get() & 0xFF);
+        }
+        return value;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,125 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageVariantServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsOrientationInEitherByteOrder() {
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            assertEquals(orientation, ImageVariantService.exifOrientation(exif(ByteOrder.BIG_ENDIAN, orientation)));
+            assertEquals(orientation, ImageVariantService.exifOrientation(exif(ByteOrder.LITTLE_ENDIAN, orientation)));
+        }
+    }
+
+    @Test
+    void ignoresMissingOrInvalidOrientation() {
+        assertEquals(0, ImageVariantService.exifOrientation(exif(ByteOrder.BIG_ENDIAN, 9)));
+        assertEquals(0, ImageVariantService.exifOrientation("http://ns.adobe.com/xap/1.0/\0".getBytes()));
+        byte[] truncated = exif(ByteOrder.BIG_ENDIAN, 6);
+        assertEquals(0, ImageVariantService.exifOrientation(Arrays.copyOf(truncated, 20)));
+    }
+
+    @Test
+    void portraitPhotoIsTurnedUpright() throws IOException {
+        // Stored landscape, red on the left; orientation 6 means turn it clockwise to view
+        Path file = Files.write(dir.resolve("portrait.jpg"), jpegWithOrientation(6));
+
+        BufferedImage image = ImageVariantService.read(file, 1000);
+
+        assertEquals(40, image.getWidth());
+        assertEquals(80, image.getHeight());
+        assertTrue(isRed(image.getRGB(20, 10)), "red half on top");
+        assertTrue(isBlue(image.getRGB(20, 70)), "blue half at the bottom");
+    }
+
+    @Test
+    void everyOrientationPutsTheStoredCornerInPlace() {
+        BufferedImage stored = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        stored.setRGB(0, 0, 0xFF0000);
+        // Where the stored top-left pixel must end up, for orientations 1 to 8
+        int[][] expected = {{0, 0}, {3, 0}, {3, 1}, {0, 1}, {0, 0}, {1, 0}, {1, 3}, {0, 3}};
+
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            BufferedImage upright = ImageVariantService.orient(stored, orientation);
+            int[] corner = expected[orientation - 1];
+            assertEquals(0xFF0000, upright.getRGB(corner[0], corner[1]) & 0xFFFFFF, "orientation " + orientation);
+            assertEquals(orientation >= 5 ? 2 : 4, upright.getWidth(), "orientation " + orientation);
+        }
+    }
+
+    @Test
+    void imageWithoutExifIsUnchanged() throws IOException {
+        Path file = Files.write(dir.resolve("plain.jpg"), jpeg());
+
+        BufferedImage image = ImageVariantService.read(file, 1000);
+
+        assertEquals(80, image.getWidth());
+        assertTrue(isRed(image.getRGB(10, 20)));
+    }
+
+    private static byte[] jpegWithOrientation(int orientation) throws IOException {
+        byte[] plain = jpeg();
+        byte[] app1 = exif(ByteOrder.BIG_ENDIAN, orientation);
+        // Laid out like a camera file: SOI, the Exif APP1 segment in place of JFIF APP0, then the rest
+        int rest = 4 + (((plain[4] & 0xFF) << 8) | (plain[5] & 0xFF));
+        ByteBuffer out = ByteBuffer.allocate(2 + 4 + app1.length + plain.length - rest);
+        out.put(plain, 0, 2).put((byte) 0xFF).put((byte) 0xE1).putShort((short) (app1.length + 2)).put(app1);
+        out.put(plain, rest, plain.length - rest);
+        return out.array();
+    }
+
+    private static byte[] jpeg() throws IOException {
+        BufferedImage image = new BufferedImage(80, 40, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 40, 40);
+        g.setColor(Color.BLUE);
+        g.fillRect(40, 0, 40, 40);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * An APP1 Exif payload whose IFD0 holds just the Orientation tag
+     */
+    private static byte[] exif(ByteOrder order, int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4).order(order);
+        tiff.put(new byte[] {'E', 'x', 'i', 'f', 0, 0});
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        return tiff.array();
+    }
+
+    private static boolean isRed(int rgb) {
+        return ((rgb >> 16) & 0xFF) > 200 && (rgb & 0xFF) < 60;
+    }
+
+    private static boolean isBlue(int rgb) {
+        return (rgb & 0xFF) > 200 && ((rgb >> 16) & 0xFF) < 60;
+    }
+}
@@ -0,0 +1,191 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LikeWriteBufferTest {
+
+    @TempDir
+    Path journalDir;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createSchema() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE posts (id BIGINT PRIMARY KEY, likes_count BIGINT NOT NULL DEFAULT 0)");
+        jdbcTemplate.execute("CREATE TABLE post_likes (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "post_id BIGINT NOT NULL REFERENCES posts (id), user_id BIGINT NOT NULL, created_at TIMESTAMP, " +
+                "UNIQUE (post_id, user_id))");
+        jdbcTemplate.update("INSERT INTO posts (id, likes_count) VALUES (1, 0), (2, 1)");
+        jdbcTemplate.update("INSERT INTO post_likes (post_id, user_id) VALUES (2, 10)");
+    }
+
+    @AfterEach
+    void dropDatabase() {
+        database.shutdown();
+    }
+
+    @Test
+    void replaysJournalLeftByCrash() throws IOException {
+        LikeWriteBuffer crashed = start(0);
+        crashed.like(1L, 10L);
+        crashed.like(1L, 11L);
+        crashed.unlike(1L, 11L);
+        crashed.unlike(2L, 10L);
+        // Toggle for a post deleted before the restart
+        crashed.like(3L, 10L);
+        // The process dies mid-append: no flush, no shutdown, half a record at the end
+        Files.write(onlySegment(), new byte[] {1, 0, 0, 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+        LikeWriteBuffer restarted = start(0);
+        assertEquals(Boolean.TRUE, restarted.getBufferedState(1L, 10L));
+        assertEquals(Boolean.FALSE, restarted.getBufferedState(1L, 11L));
+        assertEquals(Boolean.FALSE, restarted.getBufferedState(2L, 10L));
+
+        restarted.flush();
+        assertEquals(1, count("SELECT COUNT(*) FROM post_likes WHERE post_id = 1"));
+        assertEquals(0, count("SELECT COUNT(*) FROM post_likes WHERE post_id = 2"));
+        assertEquals(1, count("SELECT likes_count FROM posts WHERE id = 1"));
+        assertEquals(0, count("SELECT likes_count FROM posts WHERE id = 2"));
+        assertNull(restarted.getBufferedState(1L, 10L));
+
+        // Flushed segments are gone, so a second restart has nothing left to replay
+        LikeWriteBuffer again = start(0);
+        assertNull(again.getBufferedState(1L, 10L));
+        again.flush();
+        assertEquals(1, count("SELECT likes_count FROM posts WHERE id = 1"));
+    }
+
+    @Test
+    void replayingAnAlreadyFlushedSegmentChangesNothing() throws IOException {
+        LikeWriteBuffer buffer = start(0);
+        buffer.like(1L, 10L);
+        byte[] segment = Files.readAllBytes(onlySegment());
+        buffer.flush();
+        assertEquals(1, count("SELECT likes_count FROM posts WHERE id = 1"));
+
+        // A crash after the flush committed but before its segment was deleted
+        Files.write(journalDir.resolve("likes-1.journal"), segment);
+        LikeWriteBuffer restarted = start(0);
+        restarted.flush();
+        assertEquals(1, count("SELECT COUNT(*) FROM post_likes WHERE post_id = 1"));
+        assertEquals(1, count("SELECT likes_count FROM posts WHERE id = 1"));
+    }
+
+    @Test
+    void periodicSyncKeepsAppending() throws IOException {
+        LikeWriteBuffer buffer = start(10_000);
+        buffer.like(1L, 10L);
+        buffer.syncJournal();
+        buffer.like(1L, 11L);
+        buffer.syncJournal();
+
+        LikeWriteBuffer restarted = start(10_000);
+        assertEquals(Boolean.TRUE, restarted.getBufferedState(1L, 10L));
+        assertEquals(Boolean.TRUE, restarted.getBufferedState(1L, 11L));
+    }
+
+    @Test
+    void toggleThatFailsOnItsOwnIsDroppedAndTheRestFlushed() throws IOException {
+        // A row the database will never take
+        jdbcTemplate.execute("ALTER TABLE post_likes ADD CONSTRAINT no_bad_user CHECK (user_id <> 666)");
+        LikeWriteBuffer buffer = start(0);
+        buffer.like(1L, 10L);
+        buffer.like(1L, 666L);
+        buffer.unlike(2L, 10L);
+
+        buffer.flush();
+
+        assertEquals(1, count("SELECT COUNT(*) FROM post_likes WHERE post_id = 1"));
+        assertEquals(1, count("SELECT likes_count FROM posts WHERE id = 1"));
+        assertEquals(0, count("SELECT likes_count FROM posts WHERE id = 2"));
+        assertEquals(1, buffer.getDroppedToggles());
+        assertNull(buffer.getBufferedState(1L, 666L));
+        // The sealed segment went with the flush; only the fresh one is left
+        assertEquals(0, Files.size(onlySegment()));
+    }
+
+    @Test
+    void batchWhereNothingGoesThroughIsKept() throws IOException {
+        LikeWriteBuffer buffer = start(0);
+        buffer.like(1L, 10L);
+        buffer.like(2L, 11L);
+        // Not a transient error, but every toggle fails alike, so none of them is to blame
+        jdbcTemplate.execute("ALTER TABLE posts RENAME TO posts_away");
+
+        buffer.flush();
+        assertEquals(Boolean.TRUE, buffer.getBufferedState(1L, 10L));
+        assertEquals(0, buffer.getDroppedToggles());
+
+        jdbcTemplate.execute("ALTER TABLE posts_away RENAME TO posts");
+        buffer.flush();
+        assertEquals(1, count("SELECT likes_count FROM posts WHERE id = 1"));
+        assertEquals(2, count("SELECT likes_count FROM posts WHERE id = 2"));
+        assertNull(buffer.getBufferedState(1L, 10L));
+    }
+
+    @Test
+    void newKeysAreRefusedPastTheHardCap() throws IOException {
+        LikeWriteBuffer buffer = start(0);
+        ReflectionTestUtils.setField(buffer, "maxBuffered", 2);
+        buffer.like(1L, 10L);
+        buffer.like(1L, 11L);
+
+        assertThrows(LikeWriteBuffer.BufferFullException.class, () -> buffer.like(1L, 12L));
+        // Keys already buffered can still change
+        buffer.unlike(1L, 11L);
+        assertEquals(Boolean.FALSE, buffer.getBufferedState(1L, 11L));
+
+        buffer.flush();
+        buffer.like(1L, 12L);
+        assertEquals(Boolean.TRUE, buffer.getBufferedState(1L, 12L));
+    }
+
+    private LikeWriteBuffer start(long journalSyncIntervalMs) throws IOException {
+        LikeWriteBuffer buffer = new LikeWriteBuffer();
+        ReflectionTestUtils.setField(buffer, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(buffer, "transactionManager", new DataSourceTransactionManager(database));
+        ReflectionTestUtils.setField(buffer, "stripeCount", 4);
+        ReflectionTestUtils.setField(buffer, "maxPending", 1000);
+        ReflectionTestUtils.setField(buffer, "batchSize", 2);
+        ReflectionTestUtils.setField(buffer, "maxBuffered", 1000);
+        ReflectionTestUtils.setField(buffer, "journalDir", journalDir.toString());
+        ReflectionTestUtils.setField(buffer, "journalSyncIntervalMs", journalSyncIntervalMs);
+        buffer.init();
+        return buffer;
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir, "likes-*.journal")) {
+            files.forEach(segments::add);
+        }
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+}
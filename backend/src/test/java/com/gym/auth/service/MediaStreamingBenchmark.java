@@ -0,0 +1,180 @@
+package com.gym.auth.service;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput and server-side allocation of the three ways media bytes have been sent: Tomcat
+ * sendfile, the pooled direct-buffer copy, and the heap-buffer stream copy it replaced, for a
+ * 100 KB image-sized file and a 20 MB video-sized one, over a real NIO connector on loopback.
+ *
+ * Not a unit test, so surefire's default includes skip it. Run it with
+ * {@code mvn test -Dtest=MediaStreamingBenchmark}; results are printed as a table.
+ * Allocation is what every thread except the client allocated, per request.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MediaStreamingBenchmark {
+
+    private static final int SMALL = 100 * 1024;
+    private static final int LARGE = 20 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @TempDir
+    static Path dir;
+
+    private Tomcat tomcat;
+    private int port;
+    private final Map<String, Path> files = new HashMap<>();
+    private final byte[] clientBuffer = new byte[BUFFER_SIZE];
+
+    @BeforeAll
+    void start() throws Exception {
+        Random random = new Random(42);
+        for (int size : new int[] {SMALL, LARGE}) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            files.put(String.valueOf(size), Files.write(dir.resolve(size + ".bin"), bytes));
+        }
+
+        MediaStreamingService sendfile = service(true);
+        MediaStreamingService pooled = service(false);
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(dir.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", dir.toString());
+        Tomcat.addServlet(context, "media", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                String[] parts = request.getRequestURI().split("/");
+                Path file = files.get(parts[2]);
+                MediaMetadataCache.FileMetadata metadata = new MediaMetadataCache.FileMetadata(
+                        () -> file, Files.size(file), 0, "\"bench\"");
+                switch (parts[1]) {
+                    case "sendfile":
+                        sendfile.serve(request, response, metadata, file.getFileName().toString(), "application/octet-stream");
+                        break;
+                    case "pooled":
+                        pooled.serve(request, response, metadata, file.getFileName().toString(), "application/octet-stream");
+                        break;
+                    default:
+                        legacyCopy(file, response);
+                }
+            }
+        });
+        context.addServletMappingDecoded("/*", "media");
+        tomcat.getConnector();
+        tomcat.start();
+        port = tomcat.getConnector().getLocalPort();
+    }
+
+    @AfterAll
+    void stop() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Test
+    void compareCopyPaths() throws IOException {
+        StringBuilder table = new StringBuilder(String.format("%n%-10s %-9s %12s %18s%n",
+                "path", "file", "MB/s", "alloc B/request"));
+        for (int size : new int[] {SMALL, LARGE}) {
+            int requests = size == SMALL ? 3000 : 40;
+            for (String path : new String[] {"legacy", "pooled", "sendfile"}) {
+                // Warm up the JIT, the connection pool and the buffer pool first
+                run(path, size, requests / 4);
+                long allocatedBefore = serverAllocatedBytes();
+                long start = System.nanoTime();
+                run(path, size, requests);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long allocated = serverAllocatedBytes() - allocatedBefore;
+                table.append(String.format("%-10s %-9s %12.0f %18d%n", path, size == SMALL ? "100 KB" : "20 MB",
+                        (double) size * requests / seconds / (1024 * 1024), allocated / requests));
+            }
+        }
+        System.out.println(table);
+    }
+
+    private void run(String path, int size, int requests) throws IOException {
+        URL url = new URL("http://localhost:" + port + "/" + path + "/" + size);
+        for (int i = 0; i < requests; i++) {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            long received = 0;
+            try (InputStream in = connection.getInputStream()) {
+                int n;
+                while ((n = in.read(clientBuffer)) != -1) {
+                    received += n;
+                }
+            }
+            assertEquals(size, received);
+        }
+    }
+
+    /**
+     * The copy from before the sendfile change: a fresh heap buffer per response
+     */
+    private static void legacyCopy(Path file, HttpServletResponse response) throws IOException {
+        long length = Files.size(file);
+        response.setContentType("application/octet-stream");
+        response.setContentLengthLong(length);
+        OutputStream out = response.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(length, 1)));
+            long position = 0;
+            while (position < length) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                out.write(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+    }
+
+    private static MediaStreamingService service(boolean sendfileEnabled) {
+        MediaStreamingService service = new MediaStreamingService(32);
+        // A disabled hot cache, so every request reads the file
+        ReflectionTestUtils.setField(service, "hotMediaCache", new HotMediaCache());
+        ReflectionTestUtils.setField(service, "cacheControl", "public, max-age=31536000, immutable");
+        ReflectionTestUtils.setField(service, "sendfileEnabled", sendfileEnabled);
+        return service;
+    }
+
+    private static long serverAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long self = Thread.currentThread().getId();
+        long total = 0;
+        for (long id : threads.getAllThreadIds()) {
+            long bytes = id == self ? -1 : threads.getThreadAllocatedBytes(id);
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,194 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaStreamingServiceTest {
+
+    private static final String ETAG = "\"2710-18b0\"";
+    // Whole seconds, as HTTP dates are
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesSingleRanges() {
+        assertRanges("bytes=0-99", 1000, 0, 99);
+        assertRanges("bytes=900-", 1000, 900, 999);
+        assertRanges("bytes=990-2000", 1000, 990, 999);
+    }
+
+    @Test
+    void parsesSuffixRanges() {
+        assertRanges("bytes=-100", 1000, 900, 999);
+        // A suffix longer than the file is the whole file
+        assertRanges("bytes=-5000", 1000, 0, 999);
+    }
+
+    @Test
+    void sortsAndCoalescesOverlappingRanges() {
+        assertRanges("bytes=500-599, 0-99, 50-150, 151-200", 1000, 0, 200, 500, 599);
+        assertRanges("bytes=0-0,-1,0-999", 1000, 0, 999);
+    }
+
+    @Test
+    void unsatisfiableRangesGiveAnEmptyList() {
+        assertTrue(MediaStreamingService.parseRanges("bytes=1000-", 1000).isEmpty());
+        assertTrue(MediaStreamingService.parseRanges("bytes=-0", 1000).isEmpty());
+        assertTrue(MediaStreamingService.parseRanges("bytes=-10", 0).isEmpty());
+        // Satisfiable ranges survive next to unsatisfiable ones
+        assertRanges("bytes=2000-3000, 10-19", 1000, 10, 19);
+    }
+
+    @Test
+    void malformedHeadersAreIgnored() {
+        for (String header : new String[] {"items=0-10", "bytes=10-5", "bytes=abc", "bytes=5", "bytes=-",
+                "bytes=--5", "bytes=+1-2", "bytes=1-+2", "bytes=0-99999999999999999999"}) {
+            assertNull(MediaStreamingService.parseRanges(header, 1000), header);
+        }
+    }
+
+    @Test
+    void moreThanSixteenRangesAreIgnored() {
+        StringBuilder sixteen = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < 16; i++) {
+            sixteen.append(',').append(i * 10).append('-').append(i * 10);
+        }
+        assertEquals(16, MediaStreamingService.parseRanges(sixteen.toString(), 1000).size());
+        assertNull(MediaStreamingService.parseRanges(sixteen + ",500-500", 1000));
+
+        // Counted after coalescing, so many adjacent ranges are fine
+        StringBuilder adjacent = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < 100; i++) {
+            adjacent.append(',').append(i).append('-').append(i);
+        }
+        assertRanges(adjacent.toString(), 1000, 0, 99);
+    }
+
+    @Test
+    void ifNoneMatchUsesWeakComparison() {
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, "W/" + ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, "\"other\", " + ETAG));
+        assertTrue(notModified(HttpHeaders.IF_NONE_MATCH, "*"));
+        assertFalse(notModified(HttpHeaders.IF_NONE_MATCH, "\"other\""));
+    }
+
+    @Test
+    void ifModifiedSinceComparesWholeSeconds() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+        assertTrue(MediaStreamingService.notModified(request, ETAG, LAST_MODIFIED + 999));
+        assertFalse(MediaStreamingService.notModified(request, ETAG, LAST_MODIFIED + 1000));
+    }
+
+    @Test
+    void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+        assertFalse(MediaStreamingService.notModified(request, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void ifRangeNeedsAStrongMatch() {
+        assertTrue(ifRangeMatches(null, ETAG));
+        assertTrue(ifRangeMatches(ETAG, ETAG));
+        assertFalse(ifRangeMatches("W/" + ETAG, ETAG));
+        assertFalse(ifRangeMatches("W/" + ETAG, "W/" + ETAG));
+        assertFalse(ifRangeMatches("\"other\"", ETAG));
+    }
+
+    @Test
+    void ifRangeDateMustMatchExactly() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_RANGE, LAST_MODIFIED);
+        assertTrue(MediaStreamingService.ifRangeMatches(request, ETAG, LAST_MODIFIED));
+        assertFalse(MediaStreamingService.ifRangeMatches(request, ETAG, LAST_MODIFIED + 1000));
+
+        MockHttpServletRequest garbage = new MockHttpServletRequest();
+        garbage.addHeader(HttpHeaders.IF_RANGE, "yesterday");
+        assertFalse(MediaStreamingService.ifRangeMatches(garbage, ETAG, LAST_MODIFIED));
+    }
+
+    @Test
+    void servesMultipleRangesAsMultipart() throws IOException {
+        MockHttpServletResponse response = serve("bytes=0-3, 10-12", null);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString(StandardCharsets.US_ASCII);
+        assertEquals(response.getContentLengthLong(), response.getContentAsByteArray().length);
+        assertTrue(body.contains("Content-Range: bytes 0-3/26\r\n\r\nabcd\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 10-12/26\r\n\r\nklm\r\n"));
+    }
+
+    @Test
+    void unsatisfiableRangeGets416() throws IOException {
+        MockHttpServletResponse response = serve("bytes=26-", null);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */26", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void staleIfRangeGetsTheWholeFile() throws IOException {
+        MockHttpServletResponse response = serve("bytes=0-3", "\"stale\"");
+
+        assertEquals(200, response.getStatus());
+        assertEquals("abcdefghijklmnopqrstuvwxyz", response.getContentAsString());
+    }
+
+    private MockHttpServletResponse serve(String range, String ifRange) throws IOException {
+        Path file = Files.write(dir.resolve("media.bin"), "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII));
+        MediaStreamingService service = new MediaStreamingService(1);
+        ReflectionTestUtils.setField(service, "hotMediaCache", new HotMediaCache());
+        ReflectionTestUtils.setField(service, "cacheControl", "public, max-age=31536000, immutable");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/media.bin");
+        request.addHeader(HttpHeaders.RANGE, range);
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.serve(request, response, new MediaMetadataCache.FileMetadata(() -> file, 26, LAST_MODIFIED, ETAG),
+                "media.bin", "application/octet-stream");
+        return response;
+    }
+
+    private static boolean notModified(String header, String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(header, value);
+        return MediaStreamingService.notModified(request, ETAG, LAST_MODIFIED);
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String etag) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        return MediaStreamingService.ifRangeMatches(request, etag, LAST_MODIFIED);
+    }
+
+    private static void assertRanges(String header, long length, long... expected) {
+        List<long[]> ranges = MediaStreamingService.parseRanges(header, length);
+        assertNotNull(ranges, header);
+        assertEquals(expected.length / 2, ranges.size(), header);
+        for (int i = 0; i < ranges.size(); i++) {
+            assertArrayEquals(new long[] {expected[2 * i], expected[2 * i + 1]}, ranges.get(i), header);
+        }
+    }
+}
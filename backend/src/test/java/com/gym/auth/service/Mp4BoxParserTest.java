@@ -0,0 +1,109 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.gym.auth.service.Mp4Fixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Mp4BoxParserTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsDurationDimensionsAndLayout() throws IOException {
+        Mp4BoxParser.Mp4Info info = parse(ftyp(),
+                box("moov", mvhd(1000, 10_000), trak(1, "vide", 90_000, 900_000, stts(300, 3000))),
+                box("mdat", new byte[64]));
+
+        assertEquals(10_000, info.getDurationMillis());
+        assertEquals(640, info.getWidth());
+        assertEquals(360, info.getHeight());
+        assertTrue(info.isMoovBeforeMdat());
+    }
+
+    @Test
+    void shortMovieHeaderDoesNotHideLongTrack() throws IOException {
+        Mp4BoxParser.Mp4Info info = parse(ftyp(),
+                box("moov", mvhd(1000, 5_000), trak(1, "vide", 90_000, 45 * 90_000)));
+
+        assertEquals(45_000, info.getDurationMillis());
+    }
+
+    @Test
+    void sampleTableLongerThanHeadersWins() throws IOException {
+        // Headers claim 5 s; the samples actually play for 60 s
+        Mp4BoxParser.Mp4Info info = parse(ftyp(),
+                box("moov", mvhd(1000, 5_000), trak(1, "vide", 1000, 5_000, stts(1, 10_000, 50, 1_000))));
+
+        assertEquals(60_000, info.getDurationMillis());
+    }
+
+    @Test
+    void hugeSampleTableSaturatesInsteadOfWrapping() throws IOException {
+        Mp4BoxParser.Mp4Info info = parse(ftyp(),
+                box("moov", mvhd(1000, 5_000), trak(1, "vide", 1000, 5_000,
+                        stts(0xFFFFFFFFL, 0xFFFFFFFFL, 0xFFFFFFFFL, 0xFFFFFFFFL, 0xFFFFFFFFL, 0xFFFFFFFFL))));
+
+        assertTrue(info.getDurationMillis() > 30_000);
+    }
+
+    @Test
+    void fragmentedFileWithoutMehdAddsUpRuns() throws IOException {
+        byte[] moov = box("moov", mvhd(1000, 0),
+                trak(1, "vide", 1000, 0),
+                box("mvex", trex(1, 500)));
+        Mp4BoxParser.Mp4Info info = parse(ftyp(), moov,
+                // 4 s of explicit durations, then 10 samples at the fragment default of 1 s,
+                // then 6 samples falling back to the trex default of 0.5 s
+                box("moof", box("traf", tfhd(1, null), trunWithDurations(1000, 1000, 2000))), box("mdat", new byte[8]),
+                box("moof", box("traf", tfhd(1, 1000L), trunWithDefaults(10))), box("mdat", new byte[8]),
+                box("moof", box("traf", tfhd(1, null), trunWithDefaults(6))), box("mdat", new byte[8]));
+
+        assertEquals(17_000, info.getDurationMillis());
+    }
+
+    @Test
+    void fragmentedFileUsesLongerOfMehdAndRuns() throws IOException {
+        byte[] moov = box("moov", mvhd(1000, 0), trak(1, "vide", 1000, 0), box("mvex", mehd(2_000), trex(1, 0)));
+        Mp4BoxParser.Mp4Info info = parse(ftyp(), moov,
+                box("moof", box("traf", tfhd(1, null), trunWithDurations(20_000, 20_000))));
+
+        assertEquals(40_000, info.getDurationMillis());
+    }
+
+    @Test
+    void rejectsFileWithNoDuration() {
+        assertThrows(Mp4BoxParser.MalformedMp4Exception.class,
+                () -> parse(ftyp(), box("moov", mvhd(1000, 0), trak(1, "vide", 1000, 0))));
+    }
+
+    @Test
+    void rejectsFileWithoutMoov() {
+        assertThrows(Mp4BoxParser.MalformedMp4Exception.class, () -> parse(ftyp(), box("mdat", new byte[16])));
+    }
+
+    @Test
+    void rejectsTruncatedMoov() {
+        byte[] file = concat(ftyp(), box("moov", mvhd(1000, 10_000), trak(1, "vide", 1000, 10_000)));
+        assertThrows(Mp4BoxParser.MalformedMp4Exception.class, () -> parse(Arrays.copyOf(file, file.length - 20)));
+    }
+
+    @Test
+    void rejectsSampleTableLargerThanItsBox() {
+        byte[] lying = fullBox("stts", 0, 0, u32(1000), u32(1, 1000));
+        assertThrows(Mp4BoxParser.MalformedMp4Exception.class,
+                () -> parse(ftyp(), box("moov", mvhd(1000, 10_000), trak(1, "vide", 1000, 10_000, lying))));
+    }
+
+    private Mp4BoxParser.Mp4Info parse(byte[]... boxes) throws IOException {
+        Path file = Files.write(dir.resolve("test.mp4"), concat(boxes));
+        return Mp4BoxParser.parse(file);
+    }
+}
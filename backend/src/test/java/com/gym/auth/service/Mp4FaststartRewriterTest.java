@@ -0,0 +1,228 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.gym.auth.service.Mp4Fixtures.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Mp4FaststartRewriterTest {
+
+    // ftyp() is 32 bytes, so with a 16-byte free box the mdat payload starts here
+    private static final int PAYLOAD_START = 32 + 16 + 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void movesMoovAfterFtypAndShiftsStcoOffsets() throws IOException {
+        byte[] payload = payload(3000);
+        long[] offsets = {PAYLOAD_START, PAYLOAD_START + 1000, PAYLOAD_START + 2990};
+        byte[] moov = box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, stco(offsets)));
+        byte[] original = concat(ftyp(), box("free", new byte[8]), box("mdat", payload), moov);
+
+        byte[] rewritten = rewrite(original);
+
+        assertEquals(original.length, rewritten.length);
+        assertEquals(Arrays.asList("ftyp", "moov", "free", "mdat"), topLevelTypes(rewritten));
+        long[] patched = chunkOffsets(rewritten);
+        for (int i = 0; i < offsets.length; i++) {
+            assertEquals(offsets[i] + moov.length, patched[i]);
+        }
+        assertChunksLineUp(original, offsets, rewritten, patched);
+    }
+
+    @Test
+    void patchesCo64AlongsideStco() throws IOException {
+        byte[] payload = payload(4000);
+        long[] video = {PAYLOAD_START, PAYLOAD_START + 2000};
+        long[] audio = {PAYLOAD_START + 1000, PAYLOAD_START + 3000};
+        byte[] moov = box("moov", mvhd(1000, 3000),
+                trak(1, "vide", 90_000, 270_000, stco(video)),
+                trak(2, "soun", 48_000, 144_000, co64(audio)));
+        byte[] original = concat(ftyp(), box("free", new byte[8]), box("mdat", payload), moov);
+
+        byte[] rewritten = rewrite(original);
+
+        long[] before = join(video, audio);
+        long[] after = chunkOffsets(rewritten);
+        assertEquals(before.length, after.length);
+        for (int i = 0; i < before.length; i++) {
+            assertEquals(before[i] + moov.length, after[i]);
+        }
+        assertChunksLineUp(original, before, rewritten, after);
+    }
+
+    @Test
+    void patchesTablesLongerThanOneBlock() throws IOException {
+        byte[] payload = payload(10_008);
+        long[] offsets = new long[10_000];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = PAYLOAD_START + i;
+        }
+        byte[] original = concat(ftyp(), box("free", new byte[8]), box("mdat", payload),
+                box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, co64(offsets))));
+
+        byte[] rewritten = rewrite(original);
+
+        assertChunksLineUp(original, offsets, rewritten, chunkOffsets(rewritten));
+    }
+
+    @Test
+    void withoutFtypMoovGoesFirst() throws IOException {
+        long[] offsets = {8, 508};
+        byte[] moov = box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, stco(offsets)));
+        byte[] original = concat(box("mdat", payload(1000)), moov);
+
+        byte[] rewritten = rewrite(original);
+
+        assertEquals(Arrays.asList("moov", "mdat"), topLevelTypes(rewritten));
+        long[] patched = chunkOffsets(rewritten);
+        assertEquals(8 + moov.length, patched[0]);
+        assertChunksLineUp(original, offsets, rewritten, patched);
+    }
+
+    @Test
+    void alreadyFaststartFileIsLeftAlone() throws IOException {
+        byte[] original = concat(ftyp(), box("free", new byte[8]), box("mdat", payload(1000)),
+                box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, stco(PAYLOAD_START))));
+        byte[] rewritten = rewrite(original);
+
+        // Running the rewriter over its own output is a no-op
+        Path source = Files.write(dir.resolve("faststart.mp4"), rewritten);
+        Path target = dir.resolve("again.mp4");
+        assertFalse(Mp4FaststartRewriter.rewrite(source, target));
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void filesThatCannotBeRewrittenSafelyAreLeftAlone() throws IOException {
+        byte[] mdat = box("mdat", payload(100));
+        byte[] moov = box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, stco(PAYLOAD_START)));
+
+        assertNotRewritten(concat(ftyp(), mdat));
+        assertNotRewritten(concat(ftyp(), mdat, moov, box("moof", box("mfhd", u32(0, 1)))));
+        assertNotRewritten(concat(ftyp(), mdat, box("moov", mvhd(1000, 3000), box("cmov", new byte[16]))));
+        assertNotRewritten(concat(ftyp(), mdat, moov, moov));
+    }
+
+    @Test
+    void truncatedMoovIsMalformed() throws IOException {
+        byte[] complete = concat(ftyp(), box("mdat", payload(100)),
+                box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, stco(40, 80))));
+        Path source = Files.write(dir.resolve("truncated.mp4"), Arrays.copyOf(complete, complete.length - 6));
+
+        assertThrows(Mp4BoxParser.MalformedMp4Exception.class,
+                () -> Mp4FaststartRewriter.rewrite(source, dir.resolve("out.mp4")));
+    }
+
+    @Test
+    void chunkOffsetTableLargerThanItsBoxIsMalformed() throws IOException {
+        byte[] lying = fullBox("stco", 0, 0, u32(1000), u32(40, 80));
+        Path source = Files.write(dir.resolve("lying.mp4"), concat(ftyp(), box("mdat", payload(100)),
+                box("moov", mvhd(1000, 3000), trak(1, "vide", 90_000, 270_000, lying))));
+
+        assertThrows(Mp4BoxParser.MalformedMp4Exception.class,
+                () -> Mp4FaststartRewriter.rewrite(source, dir.resolve("out.mp4")));
+    }
+
+    private byte[] rewrite(byte[] original) throws IOException {
+        Path source = Files.write(dir.resolve("in-" + System.nanoTime() + ".mp4"), original);
+        Path target = dir.resolve("out-" + System.nanoTime() + ".mp4");
+        assertTrue(Mp4FaststartRewriter.rewrite(source, target));
+        return Files.readAllBytes(target);
+    }
+
+    private void assertNotRewritten(byte[] original) throws IOException {
+        Path source = Files.write(dir.resolve("in-" + System.nanoTime() + ".mp4"), original);
+        Path target = dir.resolve("out-" + System.nanoTime() + ".mp4");
+        assertFalse(Mp4FaststartRewriter.rewrite(source, target));
+        assertFalse(Files.exists(target));
+    }
+
+    /**
+     * Each patched offset must point at the bytes the original offset pointed at
+     */
+    private static void assertChunksLineUp(byte[] original, long[] before, byte[] rewritten, long[] after) {
+        for (int i = 0; i < before.length; i++) {
+            int length = (int) Math.min(8, original.length - before[i]);
+            assertArrayEquals(Arrays.copyOfRange(original, (int) before[i], (int) before[i] + length),
+                    Arrays.copyOfRange(rewritten, (int) after[i], (int) after[i] + length), "chunk " + i);
+        }
+    }
+
+    /**
+     * Bytes that differ at every position within 256, so a misplaced offset reads the wrong data
+     */
+    private static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (i * 31 + i / 256);
+        }
+        return payload;
+    }
+
+    private static List<String> topLevelTypes(byte[] file) {
+        List<String> types = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(file);
+        for (int position = 0; position < file.length; position += buffer.getInt(position)) {
+            types.add(new String(file, position + 4, 4, StandardCharsets.ISO_8859_1));
+        }
+        return types;
+    }
+
+    /**
+     * Every stco/co64 entry under moov, in file order
+     */
+    private static long[] chunkOffsets(byte[] file) {
+        List<Long> offsets = new ArrayList<>();
+        collectChunkOffsets(ByteBuffer.wrap(file), 0, file.length, offsets);
+        long[] result = new long[offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = offsets.get(i);
+        }
+        return result;
+    }
+
+    private static void collectChunkOffsets(ByteBuffer file, int start, int end, List<Long> offsets) {
+        for (int position = start; position < end; position += file.getInt(position)) {
+            String type = new String(file.array(), position + 4, 4, StandardCharsets.ISO_8859_1);
+            int size = file.getInt(position);
+            switch (type) {
+                case "moov":
+                case "trak":
+                case "mdia":
+                case "minf":
+                case "stbl":
+                    collectChunkOffsets(file, position + 8, position + size, offsets);
+                    break;
+                case "stco":
+                case "co64":
+                    int count = file.getInt(position + 12);
+                    for (int i = 0; i < count; i++) {
+                        offsets.add("co64".equals(type)
+                                ? file.getLong(position + 16 + i * 8)
+                                : file.getInt(position + 16 + i * 4) & 0xffffffffL);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static long[] join(long[] a, long[] b) {
+        long[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
@@ -0,0 +1,126 @@
+package com.gym.auth.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds small synthetic MP4 files box by box, with just the fields the parser and the
+ * faststart rewriter look at
+ */
+final class Mp4Fixtures {
+
+    private Mp4Fixtures() {
+    }
+
+    static byte[] box(String type, byte[]... payload) {
+        byte[] body = concat(payload);
+        return concat(u32(8 + body.length), type.getBytes(StandardCharsets.ISO_8859_1), body);
+    }
+
+    static byte[] fullBox(String type, int version, int flags, byte[]... payload) {
+        return box(type, concat(u32(((long) version << 24) | flags)), concat(payload));
+    }
+
+    static byte[] ftyp() {
+        return box("ftyp", ascii("isom"), u32(512), ascii("isomiso2avc1mp41"));
+    }
+
+    static byte[] mvhd(long timescale, long duration) {
+        return fullBox("mvhd", 0, 0, u32(0), u32(0), u32(timescale), u32(duration),
+                u32(0x00010000), new byte[2 + 10 + 36 + 24], u32(2));
+    }
+
+    static byte[] mehd(long duration) {
+        return fullBox("mehd", 0, 0, u32(duration));
+    }
+
+    static byte[] tkhd(long trackId, int width, int height) {
+        return fullBox("tkhd", 0, 7, u32(0), u32(0), u32(trackId), u32(0), u32(0),
+                new byte[8 + 8 + 36], u32((long) width << 16), u32((long) height << 16));
+    }
+
+    static byte[] mdhd(long timescale, long duration) {
+        return fullBox("mdhd", 0, 0, u32(0), u32(0), u32(timescale), u32(duration), new byte[4]);
+    }
+
+    static byte[] hdlr(String handler) {
+        return fullBox("hdlr", 0, 0, u32(0), ascii(handler), new byte[12], new byte[1]);
+    }
+
+    /**
+     * Pairs of sample count and sample delta
+     */
+    static byte[] stts(long... countsAndDeltas) {
+        return fullBox("stts", 0, 0, u32(countsAndDeltas.length / 2), u32(countsAndDeltas));
+    }
+
+    static byte[] stco(long... offsets) {
+        return fullBox("stco", 0, 0, u32(offsets.length), u32(offsets));
+    }
+
+    static byte[] co64(long... offsets) {
+        ByteBuffer entries = ByteBuffer.allocate(offsets.length * 8);
+        for (long offset : offsets) {
+            entries.putLong(offset);
+        }
+        return fullBox("co64", 0, 0, u32(offsets.length), entries.array());
+    }
+
+    /**
+     * A track with the given id, handler, media timescale and duration; stbl holds the rest
+     */
+    static byte[] trak(long trackId, String handler, long timescale, long duration, byte[]... stbl) {
+        return box("trak", tkhd(trackId, 640, 360),
+                box("mdia", mdhd(timescale, duration), hdlr(handler),
+                        box("minf", box("stbl", stbl))));
+    }
+
+    static byte[] trex(long trackId, long defaultDuration) {
+        return fullBox("trex", 0, 0, u32(trackId), u32(1), u32(defaultDuration), u32(0), u32(0));
+    }
+
+    static byte[] tfhd(long trackId, Long defaultDuration) {
+        return defaultDuration == null
+                ? fullBox("tfhd", 0, 0x020000, u32(trackId))
+                : fullBox("tfhd", 0, 0x020008, u32(trackId), u32(defaultDuration));
+    }
+
+    /**
+     * A run with an explicit duration and size for every sample
+     */
+    static byte[] trunWithDurations(long... durations) {
+        ByteBuffer entries = ByteBuffer.allocate(durations.length * 8);
+        for (long duration : durations) {
+            entries.putInt((int) duration).putInt(100);
+        }
+        return fullBox("trun", 0, 0x000301, u32(durations.length), u32(0), entries.array());
+    }
+
+    /**
+     * A run of samples that all take the default duration
+     */
+    static byte[] trunWithDefaults(int sampleCount) {
+        return fullBox("trun", 0, 0x000001, u32(sampleCount), u32(0));
+    }
+
+    static byte[] u32(long... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (long value : values) {
+            buffer.putInt((int) value);
+        }
+        return buffer.array();
+    }
+
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,204 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----form7MA4YWxk";
+
+    @Test
+    void readsFieldsAndFiles() throws IOException {
+        byte[] body = multipart(
+                field("text", "hello"),
+                file("images", "a.jpg", "image/jpeg", bytes("JPEGDATA")));
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        MultipartStreamReader.Part text = reader.next();
+        assertEquals("text", text.getName());
+        assertNull(text.getFileName());
+        assertEquals("hello", text.readString(100));
+
+        MultipartStreamReader.Part image = reader.next();
+        assertEquals("images", image.getName());
+        assertEquals("a.jpg", image.getFileName());
+        assertEquals("image/jpeg", image.getContentType());
+        assertArrayEquals(bytes("JPEGDATA"), readAll(image.getInputStream(100)));
+
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void boundarySplitAcrossReadsIsFound() throws IOException {
+        // Almost-delimiters inside the body must come through as data
+        byte[] content = bytes("a\r\n--" + BOUNDARY.substring(0, 6) + "b\r\n-\r\n--x");
+        byte[] body = multipart(file("video", "v.mp4", "video/mp4", content), field("text", "after"));
+
+        for (int chunk = 1; chunk <= BOUNDARY.length() + 8; chunk++) {
+            MultipartStreamReader reader = new MultipartStreamReader(trickle(body, chunk), BOUNDARY, Long.MAX_VALUE);
+            assertArrayEquals(content, readAll(reader.next().getInputStream(Long.MAX_VALUE)), "chunk size " + chunk);
+            assertEquals("after", reader.next().readString(100), "chunk size " + chunk);
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void bodyLargerThanBufferComesThroughIntact() throws IOException {
+        byte[] content = new byte[300 * 1024];
+        new Random(7).nextBytes(content);
+        byte[] body = multipart(file("video", "v.mp4", "video/mp4", content));
+
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body, 7001), BOUNDARY, Long.MAX_VALUE);
+        assertArrayEquals(content, readAll(reader.next().getInputStream(Long.MAX_VALUE)));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void unreadPartIsSkipped() throws IOException {
+        byte[] body = multipart(file("video", "v.mp4", "video/mp4", new byte[100_000]), field("text", "kept"));
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        reader.next();
+        assertEquals("kept", reader.next().readString(100));
+    }
+
+    @Test
+    void preambleBeforeFirstBoundaryIsIgnored() throws IOException {
+        byte[] body = concat(bytes("This is a preamble\r\n"), multipart(field("text", "hi")));
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        assertEquals("hi", reader.next().readString(100));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void truncatedPartBodyIsMalformed() throws IOException {
+        byte[] body = multipart(file("video", "v.mp4", "video/mp4", new byte[5000]));
+        byte[] truncated = Arrays.copyOf(body, body.length - BOUNDARY.length() - 10);
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(truncated), BOUNDARY, Long.MAX_VALUE);
+
+        InputStream part = reader.next().getInputStream(Long.MAX_VALUE);
+        assertThrows(MultipartStreamReader.MalformedMultipartException.class, () -> readAll(part));
+    }
+
+    @Test
+    void truncatedHeadersAreMalformed() {
+        byte[] body = bytes("--" + BOUNDARY + "\r\nContent-Disposition: form-data; na");
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        assertThrows(MultipartStreamReader.MalformedMultipartException.class, reader::next);
+    }
+
+    @Test
+    void missingClosingBoundaryIsMalformed() throws IOException {
+        byte[] body = bytes("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"text\"\r\n\r\nhello");
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, Long.MAX_VALUE);
+
+        MultipartStreamReader.Part part = reader.next();
+        assertThrows(MultipartStreamReader.MalformedMultipartException.class, () -> part.readString(100));
+    }
+
+    @Test
+    void partLimitIsEnforcedWhileReading() throws IOException {
+        byte[] body = multipart(file("a", "a.bin", "application/octet-stream", new byte[1000]),
+                file("b", "b.bin", "application/octet-stream", new byte[1001]));
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body, 100), BOUNDARY, Long.MAX_VALUE);
+
+        assertEquals(1000, readAll(reader.next().getInputStream(1000)).length);
+        InputStream tooLarge = reader.next().getInputStream(1000);
+        assertThrows(MultipartStreamReader.LimitExceededException.class, () -> readAll(tooLarge));
+    }
+
+    @Test
+    void requestLimitIsEnforcedWhileReading() throws IOException {
+        byte[] body = multipart(file("video", "v.mp4", "video/mp4", new byte[200_000]));
+        MultipartStreamReader reader = new MultipartStreamReader(trickle(body, 4096), BOUNDARY, 100_000);
+
+        // The part limit alone would allow it; the request as a whole is too large
+        InputStream part = reader.next().getInputStream(Long.MAX_VALUE);
+        assertThrows(MultipartStreamReader.LimitExceededException.class, () -> readAll(part));
+    }
+
+    @Test
+    void requestAtTheLimitIsAccepted() throws IOException {
+        byte[] body = multipart(field("text", "hi"));
+        MultipartStreamReader reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY, body.length);
+
+        assertEquals("hi", reader.next().readString(100));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void boundaryIsTakenFromContentType() {
+        assertEquals("abc", MultipartStreamReader.boundaryOf("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartStreamReader.boundaryOf("Multipart/Form-Data; charset=utf-8; BOUNDARY=\"a b\""));
+        assertNull(MultipartStreamReader.boundaryOf("application/json"));
+        assertNull(MultipartStreamReader.boundaryOf("multipart/form-data"));
+        assertNull(MultipartStreamReader.boundaryOf("multipart/form-data; boundary="));
+    }
+
+    private static byte[] field(String name, String value) {
+        return concat(bytes("Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"), bytes(value));
+    }
+
+    private static byte[] file(String name, String fileName, String contentType, byte[] content) {
+        return concat(bytes("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: " + contentType + "\r\n\r\n"), content);
+    }
+
+    private static byte[] multipart(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(bytes("--" + BOUNDARY + "\r\n"), 0, BOUNDARY.length() + 4);
+            out.write(part, 0, part.length);
+            out.write('\r');
+            out.write('\n');
+        }
+        byte[] end = bytes("--" + BOUNDARY + "--\r\n");
+        out.write(end, 0, end.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * A stream that returns at most chunk bytes per read, like a slow socket
+     */
+    private static InputStream trickle(byte[] data, int chunk) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,114 @@
+package com.gym.auth.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.gym.auth.service.Mp4Fixtures.concat;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebmParserTest {
+
+    private static final byte[] EBML = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] SEGMENT = {0x18, 0x53, (byte) 0x80, 0x67};
+    private static final byte[] SEEK_HEAD = {0x11, 0x4D, (byte) 0x9B, 0x74};
+    private static final byte[] INFO = {0x15, 0x49, (byte) 0xA9, 0x66};
+    private static final byte[] TRACKS = {0x16, 0x54, (byte) 0xAE, 0x6B};
+    private static final byte[] CLUSTER = {0x1F, 0x43, (byte) 0xB6, 0x75};
+    private static final byte[] TIMECODE_SCALE = {0x2A, (byte) 0xD7, (byte) 0xB1};
+    private static final byte[] DURATION = {0x44, (byte) 0x89};
+    private static final byte[] DOC_TYPE = {0x42, (byte) 0x82};
+    private static final byte[] VOID = {(byte) 0xEC};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsDurationInDefaultTimecodeScale() throws IOException {
+        byte[] file = webm(element(SEGMENT,
+                element(SEEK_HEAD, new byte[20]),
+                element(INFO, element(DURATION, float64(12_345.0))),
+                element(CLUSTER, new byte[64])));
+
+        assertEquals(12_345L, durationMillis(file));
+    }
+
+    @Test
+    void appliesTimecodeScaleAndFloatDuration() throws IOException {
+        // Ticks of 10 ms
+        byte[] file = webm(element(SEGMENT,
+                element(INFO, element(TIMECODE_SCALE, new byte[] {(byte) 0x98, (byte) 0x96, (byte) 0x80}),
+                        element(DURATION, float32(4_500f)))));
+
+        assertEquals(45_000L, durationMillis(file));
+    }
+
+    @Test
+    void segmentOfUnknownSizeIsWalked() throws IOException {
+        byte[] segment = concat(SEGMENT, new byte[] {0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF},
+                element(VOID, new byte[300]),
+                element(INFO, element(DURATION, float64(31_000.0))));
+
+        assertEquals(31_000L, durationMillis(webm(segment)));
+    }
+
+    @Test
+    void missingDurationGivesNull() throws IOException {
+        // What a browser's MediaRecorder writes: Info without Duration, then clusters
+        assertNull(durationMillis(webm(element(SEGMENT,
+                element(INFO, element(TIMECODE_SCALE, new byte[] {0x0F, 0x42, 0x40})),
+                element(TRACKS, new byte[16]),
+                element(CLUSTER, new byte[64])))));
+    }
+
+    @Test
+    void infoAfterClusterIsNotLookedFor() throws IOException {
+        assertNull(durationMillis(webm(element(SEGMENT,
+                element(CLUSTER, new byte[64]),
+                element(INFO, element(DURATION, float64(1_000.0)))))));
+    }
+
+    @Test
+    void badOrTruncatedFilesGiveNull() throws IOException {
+        byte[] complete = webm(element(SEGMENT, element(INFO, element(DURATION, float64(1_000.0)))));
+        assertNull(durationMillis(Arrays.copyOf(complete, complete.length - 3)));
+        assertNull(durationMillis(webm(element(SEGMENT, element(INFO, element(DURATION, float64(Double.NaN)))))));
+        assertNull(durationMillis(webm(element(SEGMENT, element(INFO, element(DURATION, float64(-5.0)))))));
+        assertNull(durationMillis(new byte[] {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0x00}));
+        assertNull(durationMillis(element(SEGMENT, element(INFO, element(DURATION, float64(1_000.0))))));
+    }
+
+    private Long durationMillis(byte[] content) throws IOException {
+        Path file = Files.write(dir.resolve("video-" + System.nanoTime() + ".webm"), content);
+        return WebmParser.durationMillis(file);
+    }
+
+    private static byte[] webm(byte[] segment) {
+        return concat(element(EBML, element(DOC_TYPE, "webm".getBytes())), segment);
+    }
+
+    /**
+     * An element with an 8-byte size, which every reader has to handle
+     */
+    private static byte[] element(byte[] id, byte[]... children) {
+        byte[] body = concat(children);
+        ByteBuffer size = ByteBuffer.allocate(8).putLong(body.length);
+        byte[] sizeBytes = size.array();
+        sizeBytes[0] = 0x01;
+        return concat(id, sizeBytes, body);
+    }
+
+    private static byte[] float64(double value) {
+        return ByteBuffer.allocate(8).putDouble(value).array();
+    }
+
+    private static byte[] float32(float value) {
+        return ByteBuffer.allocate(4).putFloat(value).array();
+    }
+}